@@ -17,6 +17,7 @@ public class Routes {
 	private static String _loginUrl = "https://apiconnect.angelbroking.com/rest/auth/angelbroking/user/v1/loginByPassword";
 	private static String _wsuri = "wss://wsfeeds.angelbroking.com/NestHtml5Mobile/socket/stream";
 	private static String _swsuri = "wss://smartapisocket.angelbroking.com/websocket";
+	private static String _scripMasterUrl = "https://margincalculator.angelbroking.com/OpenAPI_File/files/OpenAPIScripMaster.json";
 
 	// Initialize all routes,
 	@SuppressWarnings("serial")
@@ -63,4 +64,8 @@ public class Routes {
 	public String getSWsuri() {
 		return _swsuri;
 	}
+
+	public String getScripMasterUrl() {
+		return _scripMasterUrl;
+	}
 }
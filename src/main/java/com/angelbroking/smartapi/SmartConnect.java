@@ -1,7 +1,13 @@
 package com.angelbroking.smartapi;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.net.Proxy;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.codec.digest.DigestUtils;
@@ -9,9 +15,16 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.angelbroking.smartapi.gtt.GttParser;
+import com.angelbroking.smartapi.gtt.GttRuleIterator;
+import com.angelbroking.smartapi.historical.CandleDownloader;
+import com.angelbroking.smartapi.historical.CandleInterval;
+import com.angelbroking.smartapi.historical.CandleParser;
+import com.angelbroking.smartapi.historical.CandleSeries;
 import com.angelbroking.smartapi.http.SessionExpiryHook;
 import com.angelbroking.smartapi.http.SmartAPIRequestHandler;
 import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.angelbroking.smartapi.instruments.InstrumentMaster;
 import com.angelbroking.smartapi.models.Gtt;
 import com.angelbroking.smartapi.models.GttParams;
 import com.angelbroking.smartapi.models.Order;
@@ -19,6 +32,8 @@ import com.angelbroking.smartapi.models.OrderParams;
 import com.angelbroking.smartapi.models.TokenSet;
 import com.angelbroking.smartapi.models.User;
 
+import okhttp3.OkHttpClient;
+
 public class SmartConnect {
 	public static SessionExpiryHook sessionExpiryHook = null;
 	public static boolean ENABLE_LOGGING = false;
@@ -29,6 +44,7 @@ public class SmartConnect {
 	private Routes routes = new Routes();
 	private String userId;
 	private SmartAPIRequestHandler smartAPIRequestHandler;
+	private CandleDownloader candleDownloader;
 
 	public SmartConnect() {
 
@@ -57,6 +73,16 @@ public class SmartConnect {
 		sessionExpiryHook = hook;
 	}
 
+	/**
+	 * Returns the OkHttp client used for REST calls, e.g. to run the ticker feed
+	 * on an OkHttpWebSocketTransport sharing it.
+	 * 
+	 * @return OkHttpClient, or null before generateSession.
+	 */
+	public OkHttpClient getHttpClient() {
+		return smartAPIRequestHandler != null ? smartAPIRequestHandler.getClient() : null;
+	}
+
 	/**
 	 * Returns apiKey of the App.
 	 * 
@@ -685,6 +711,51 @@ public class SmartConnect {
 
 	}
 
+	/**
+	 * Fetches one page of the Gtt rule list, reading the response straight into
+	 * Gtt objects.
+	 * 
+	 * @param status is list of gtt rule status.
+	 * @param page   is no of page, from 1.
+	 * @param count  is the count of gtt rules per page.
+	 * @return the rules of the page, fewer than count on the last page.
+	 * @throws IOException       is thrown when there is a connection related error.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public List<Gtt> fetchGttRules(List<String> status, int page, int count) throws IOException, SmartAPIException {
+		JSONObject params = new JSONObject();
+		params.put("status", status);
+		params.put("page", page);
+		params.put("count", count);
+
+		String url = routes.get("api.gtt.list");
+		final List<Gtt> rules = new ArrayList<Gtt>(count);
+		smartAPIRequestHandler.postRequest(this.apiKey, url, params, accessToken,
+				new SmartAPIRequestHandler.BodyReader<Integer>() {
+					@Override
+					public Integer read(Reader body) throws IOException, SmartAPIException {
+						return GttParser.read(body, rules);
+					}
+				});
+		return rules;
+	}
+
+	/**
+	 * Iterates over all Gtt rules matching a status filter, prefetching pages
+	 * concurrently. Close the iterator when stopping early.
+	 * 
+	 * @param status is list of gtt rule status.
+	 * @return GttRuleIterator
+	 */
+	public GttRuleIterator gttRules(List<String> status) {
+		return new GttRuleIterator(new GttRuleIterator.PageFetcher() {
+			@Override
+			public List<Gtt> fetch(List<String> status, int page, int count) throws IOException, SmartAPIException {
+				return fetchGttRules(status, page, count);
+			}
+		}, status);
+	}
+
 	/**
 	 * Get Historic Data.
 	 * 
@@ -703,6 +774,94 @@ public class SmartConnect {
 		}
 	}
 
+	/**
+	 * Get Historic Data as a candle series. Ranges longer than one request
+	 * allows for the interval are split into chunks fetched concurrently.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range.
+	 * @param to          is the end of the range.
+	 * @return CandleSeries ordered by time.
+	 * @throws IOException       is thrown when there is a connection related error.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public CandleSeries getCandles(String exchange, String symbolToken, CandleInterval interval, Date from, Date to)
+			throws IOException, SmartAPIException {
+		return getCandleDownloader().download(exchange, symbolToken, interval, from.getTime(), to.getTime());
+	}
+
+	/**
+	 * Fetches the candles of a range within one request's limit, reading the
+	 * response straight into the series.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range in epoch milliseconds.
+	 * @param to          is the end of the range in epoch milliseconds.
+	 * @param into        receives the candles.
+	 * @throws IOException       is thrown when there is a connection related error.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public void fetchCandles(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+			final CandleSeries into) throws IOException, SmartAPIException {
+		JSONObject params = new JSONObject();
+		params.put("exchange", exchange);
+		params.put("symboltoken", symbolToken);
+		params.put("interval", interval.name());
+		params.put("fromdate", CandleParser.formatDate(from));
+		params.put("todate", CandleParser.formatDate(to));
+
+		String url = routes.get("api.candle.data");
+		smartAPIRequestHandler.postRequest(this.apiKey, url, params, accessToken,
+				new SmartAPIRequestHandler.BodyReader<Integer>() {
+					@Override
+					public Integer read(Reader body) throws IOException, SmartAPIException {
+						return CandleParser.read(body, into);
+					}
+				});
+	}
+
+	/**
+	 * Returns the downloader behind getCandles, e.g. for other tools sharing its
+	 * rate limit.
+	 * 
+	 * @return CandleDownloader
+	 */
+	public synchronized CandleDownloader getCandleDownloader() {
+		if (candleDownloader == null) {
+			candleDownloader = new CandleDownloader(new CandleDownloader.ChunkFetcher() {
+				@Override
+				public void fetch(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+						CandleSeries into) throws IOException, SmartAPIException {
+					fetchCandles(exchange, symbolToken, interval, from, to, into);
+				}
+			});
+		}
+		return candleDownloader;
+	}
+
+	/**
+	 * Returns the index of the scrip master, mapping the snapshot file when it
+	 * was saved today and otherwise downloading the scrip master into it.
+	 * 
+	 * @param snapshot is the snapshot file, e.g. new File("instruments.bin").
+	 * @return InstrumentMaster
+	 * @throws IOException is thrown when the download or the snapshot fails.
+	 */
+	public InstrumentMaster getInstrumentMaster(File snapshot) throws IOException {
+		ZoneId exchangeZone = ZoneId.of("Asia/Kolkata");
+		long today = LocalDate.now(exchangeZone).atStartOfDay(exchangeZone).toInstant().toEpochMilli();
+		OkHttpClient client = getHttpClient();
+		// share the connection pool, but don't log the scrip master body
+		OkHttpClient.Builder builder = client != null ? client.newBuilder() : new OkHttpClient.Builder();
+		builder.interceptors().clear();
+		builder.networkInterceptors().clear();
+		return InstrumentMaster.load(snapshot, today, builder.build(), routes.getScripMasterUrl());
+	}
+
 	/**
 	 * Logs out user by invalidating the access token.
 	 * 
@@ -0,0 +1,269 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Builds OHLCV bars per token for several intervals from the tick stream.
+ * 
+ * Meant to be created once per process and registered as a listener on the
+ * tickers, with strategies reading bars or listening to bar-close events
+ * instead of building their own. Bars are aligned to exchange (IST) time and
+ * held in primitive ring arrays, so a typed tick costs O(intervals) work and
+ * no allocation.
+ * 
+ * A bar is closed by the first tick of a later bar, or by {@link #flush(long)}
+ * for tokens which stop trading. Volume is taken from the change in the
+ * cumulative day volume when the tick carries it, otherwise from the last
+ * traded quantity.
+ */
+public class BarAggregator implements OnTick, OnTicks, SmartWSOnTicks {
+
+	/** Offset of IST from UTC. */
+	public static final long EXCHANGE_OFFSET_MILLIS = 19800000L;
+
+	private final long[] intervals;
+	private final int maxTokens;
+	private final int history;
+	private final IntIntHashMap slots;
+
+	// current bar, indexed by slot * intervals + interval
+	private final long[] start;
+	private final double[] open;
+	private final double[] high;
+	private final double[] low;
+	private final double[] close;
+	private final long[] volume;
+
+	// closed bars, indexed by (slot * intervals + interval) * history + position
+	private final long[] barStart;
+	private final double[] barOpen;
+	private final double[] barHigh;
+	private final double[] barLow;
+	private final double[] barClose;
+	private final long[] barVolume;
+	private final int[] head;
+	private final int[] count;
+
+	private final long[] lastCumulativeVolume;
+	private volatile OnBar[] listeners = new OnBar[0];
+
+	/**
+	 * @param intervalsMillis are the bar intervals, e.g. 1000 and 60000.
+	 * @param maxTokens       is the largest number of tokens tracked.
+	 * @param history         is the number of closed bars kept per token and
+	 *                        interval.
+	 */
+	public BarAggregator(long[] intervalsMillis, int maxTokens, int history) {
+		if (intervalsMillis.length == 0 || maxTokens < 1 || history < 1) {
+			throw new IllegalArgumentException("intervals, maxTokens and history must be non-empty");
+		}
+		this.intervals = intervalsMillis.clone();
+		this.maxTokens = maxTokens;
+		this.history = history;
+		this.slots = new IntIntHashMap(maxTokens, -1);
+		int current = maxTokens * intervals.length;
+		start = new long[current];
+		open = new double[current];
+		high = new double[current];
+		low = new double[current];
+		close = new double[current];
+		volume = new long[current];
+		head = new int[current];
+		count = new int[current];
+		int closed = current * history;
+		barStart = new long[closed];
+		barOpen = new double[closed];
+		barHigh = new double[closed];
+		barLow = new double[closed];
+		barClose = new double[closed];
+		barVolume = new long[closed];
+		lastCumulativeVolume = new long[maxTokens];
+		Arrays.fill(lastCumulativeVolume, -1);
+	}
+
+	/**
+	 * Registers a listener for bar-close events. Listeners are called on the
+	 * thread delivering ticks.
+	 * 
+	 * @param listener receives closed bars.
+	 */
+	public synchronized void addOnBarListener(OnBar listener) {
+		OnBar[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+		updated[listeners.length] = listener;
+		listeners = updated;
+	}
+
+	public long[] getIntervals() {
+		return intervals.clone();
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		long time = tick.exchangeTimestamp > 0 ? tick.exchangeTimestamp : System.currentTimeMillis();
+		onTrade(tick.token, time, tick.lastTradedPrice, tick.volume, tick.lastTradedQuantity);
+	}
+
+	/** Reads "tk", "ltp", "v" and "ltq" of JSON ticks, stamped with receipt time. */
+	@Override
+	public void onTicks(JSONArray ticks) {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick == null || !tick.has("tk") || !tick.has("ltp")) {
+				continue;
+			}
+			int token = tick.optInt("tk", 0);
+			double price = tick.optDouble("ltp", Double.NaN);
+			if (token == 0 || Double.isNaN(price)) {
+				continue;
+			}
+			onTrade(token, now, price, tick.optLong("v", 0), tick.optLong("ltq", 0));
+		}
+	}
+
+	/**
+	 * Adds a trade to the bars of a token.
+	 * 
+	 * @param token              is the instrument token.
+	 * @param time               is the trade time in epoch milliseconds.
+	 * @param price              is the traded price.
+	 * @param cumulativeVolume   is the day volume so far, or 0 if unknown.
+	 * @param lastTradedQuantity is the quantity of this trade.
+	 */
+	public synchronized void onTrade(int token, long time, double price, long cumulativeVolume,
+			long lastTradedQuantity) {
+		int slot = slotOf(token);
+		if (slot < 0) {
+			return;
+		}
+		long traded = lastTradedQuantity;
+		if (cumulativeVolume > 0) {
+			long last = lastCumulativeVolume[slot];
+			traded = last >= 0 && cumulativeVolume >= last ? cumulativeVolume - last : 0;
+			lastCumulativeVolume[slot] = cumulativeVolume;
+		}
+		for (int i = 0; i < intervals.length; i++) {
+			int index = slot * intervals.length + i;
+			long barTime = align(time, intervals[i]);
+			if (start[index] != 0 && barTime > start[index]) {
+				closeBar(token, index, i);
+			}
+			if (start[index] == 0) {
+				start[index] = barTime;
+				open[index] = price;
+				high[index] = price;
+				low[index] = price;
+				close[index] = price;
+				volume[index] = traded;
+			} else {
+				// late ticks are folded into the current bar
+				if (price > high[index]) {
+					high[index] = price;
+				}
+				if (price < low[index]) {
+					low[index] = price;
+				}
+				close[index] = price;
+				volume[index] += traded;
+			}
+		}
+	}
+
+	/**
+	 * Closes every bar which ends at or before the given time, for tokens that
+	 * have stopped ticking. Typically called from a timer every second.
+	 * 
+	 * @param now is the current time in epoch milliseconds.
+	 */
+	public synchronized void flush(long now) {
+		int[] tokens = slots.keys();
+		for (int token : tokens) {
+			int slot = slots.get(token);
+			for (int i = 0; i < intervals.length; i++) {
+				int index = slot * intervals.length + i;
+				if (start[index] != 0 && start[index] + intervals[i] <= now) {
+					closeBar(token, index, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the closed bars of a token, oldest first, into the given arrays.
+	 * 
+	 * @param token         is the instrument token.
+	 * @param intervalIndex is the index of the interval in the constructor
+	 *                      array.
+	 * @return number of bars copied.
+	 */
+	public synchronized int getBars(int token, int intervalIndex, long[] startTimes, double[] opens, double[] highs,
+			double[] lows, double[] closes, long[] volumes) {
+		int slot = slots.get(token);
+		if (slot < 0) {
+			return 0;
+		}
+		int index = slot * intervals.length + intervalIndex;
+		int n = Math.min(count[index], startTimes.length);
+		int first = head[index] - n;
+		for (int j = 0; j < n; j++) {
+			int position = index * history + Math.floorMod(first + j, history);
+			startTimes[j] = barStart[position];
+			opens[j] = barOpen[position];
+			highs[j] = barHigh[position];
+			lows[j] = barLow[position];
+			closes[j] = barClose[position];
+			volumes[j] = barVolume[position];
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the start of the bar containing a time, aligned to IST.
+	 * 
+	 * @param time           is epoch milliseconds.
+	 * @param intervalMillis is the bar interval.
+	 * @return bar start in epoch milliseconds.
+	 */
+	public static long align(long time, long intervalMillis) {
+		long local = time + EXCHANGE_OFFSET_MILLIS;
+		return local - Math.floorMod(local, intervalMillis) - EXCHANGE_OFFSET_MILLIS;
+	}
+
+	private int slotOf(int token) {
+		int slot = slots.get(token);
+		if (slot < 0) {
+			if (slots.size() >= maxTokens) {
+				return -1;
+			}
+			slot = slots.size();
+			slots.put(token, slot);
+		}
+		return slot;
+	}
+
+	private void closeBar(int token, int index, int interval) {
+		int position = index * history + head[index];
+		barStart[position] = start[index];
+		barOpen[position] = open[index];
+		barHigh[position] = high[index];
+		barLow[position] = low[index];
+		barClose[position] = close[index];
+		barVolume[position] = volume[index];
+		head[index] = (head[index] + 1) % history;
+		if (count[index] < history) {
+			count[index]++;
+		}
+		start[index] = 0;
+		for (OnBar listener : listeners) {
+			listener.onBar(token, intervals[interval], barStart[position], barOpen[position], barHigh[position],
+					barLow[position], barClose[position], barVolume[position]);
+		}
+	}
+}
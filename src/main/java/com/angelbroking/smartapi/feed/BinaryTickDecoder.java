@@ -0,0 +1,174 @@
+package com.angelbroking.smartapi.feed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes little-endian binary market data packets straight from a
+ * ByteBuffer into a reused {@link Tick}.
+ * 
+ * Packet layout (offsets in bytes):
+ * 
+ * <pre>
+ *   0 mode (1 = LTP, 2 = quote, 3 = snap quote)    1 exchange type
+ *   2 token, 25 bytes, NUL padded ASCII             27 sequence number
+ *  35 exchange timestamp                            43 last traded price
+ *  -- quote --
+ *  51 last traded quantity   59 average price   67 volume
+ *  75 total buy quantity     83 total sell quantity (doubles)
+ *  91 open   99 high   107 low   115 close
+ *  -- snap quote --
+ * 123 last traded timestamp  131 open interest  139 open interest change % (double)
+ * 147 best five, 10 x 20 bytes (flag short, quantity, price, orders short)
+ * 347 upper circuit  355 lower circuit  363 52 week high  371 52 week low
+ * </pre>
+ * 
+ * Prices are sent in paise, or in units of 1e-7 for currency derivatives. A
+ * frame may carry several packets back to back. A decoder is meant to be used
+ * by a single reader thread.
+ */
+public class BinaryTickDecoder {
+
+	public static final int LTP_PACKET_SIZE = 51;
+	public static final int QUOTE_PACKET_SIZE = 123;
+	public static final int SNAP_QUOTE_PACKET_SIZE = 379;
+
+	/** Exchange type of currency derivatives, priced in units of 1e-7. */
+	public static final int EXCHANGE_TYPE_CDE_FO = 13;
+
+	private static final int TOKEN_LENGTH = 25;
+	private static final int BEST_FIVE_OFFSET = 147;
+	private static final int BEST_FIVE_ENTRY_SIZE = 20;
+
+	private final Tick tick = new Tick();
+
+	/**
+	 * Returns the size of a packet of the given mode.
+	 * 
+	 * @param mode is the subscription mode.
+	 * @return packet size, or -1 for an unknown mode.
+	 */
+	public static int packetSize(int mode) {
+		switch (mode) {
+		case Tick.MODE_LTP:
+			return LTP_PACKET_SIZE;
+		case Tick.MODE_QUOTE:
+			return QUOTE_PACKET_SIZE;
+		case Tick.MODE_SNAP_QUOTE:
+			return SNAP_QUOTE_PACKET_SIZE;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Decodes every packet of a frame and passes each one to the listener.
+	 * 
+	 * @param frame    is the frame, read from its position to its limit.
+	 * @param listener receives the decoded ticks.
+	 * @return number of packets decoded.
+	 * @throws IllegalArgumentException if the frame holds a truncated packet or
+	 *                                  an unknown mode.
+	 */
+	public int decode(ByteBuffer frame, OnTick listener) {
+		ByteBuffer buffer = frame.order() == ByteOrder.LITTLE_ENDIAN ? frame
+				: frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int offset = buffer.position();
+		int limit = buffer.limit();
+		int count = 0;
+		while (offset < limit) {
+			int size = packetSize(buffer.get(offset));
+			if (size < 0) {
+				throw new IllegalArgumentException("unknown subscription mode " + buffer.get(offset));
+			}
+			if (limit - offset < size) {
+				throw new IllegalArgumentException("truncated packet of " + (limit - offset) + " bytes");
+			}
+			decodePacket(buffer, offset, tick);
+			if (listener != null) {
+				listener.onTick(tick);
+			}
+			offset += size;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes one packet at an absolute offset.
+	 * 
+	 * @param buffer is a little-endian buffer.
+	 * @param offset is the offset of the packet.
+	 * @param tick   receives the decoded fields.
+	 */
+	public static void decodePacket(ByteBuffer buffer, int offset, Tick tick) {
+		tick.reset();
+		int mode = buffer.get(offset);
+		int exchangeType = buffer.get(offset + 1);
+		double divisor = exchangeType == EXCHANGE_TYPE_CDE_FO ? 10000000.0 : 100.0;
+
+		tick.mode = mode;
+		tick.exchangeType = exchangeType;
+		tick.token = parseToken(buffer, offset + 2);
+		tick.sequenceNumber = buffer.getLong(offset + 27);
+		tick.exchangeTimestamp = buffer.getLong(offset + 35);
+		tick.lastTradedPrice = buffer.getLong(offset + 43) / divisor;
+		if (mode == Tick.MODE_LTP) {
+			return;
+		}
+
+		tick.lastTradedQuantity = buffer.getLong(offset + 51);
+		tick.averageTradedPrice = buffer.getLong(offset + 59) / divisor;
+		tick.volume = buffer.getLong(offset + 67);
+		tick.totalBuyQuantity = buffer.getDouble(offset + 75);
+		tick.totalSellQuantity = buffer.getDouble(offset + 83);
+		tick.open = buffer.getLong(offset + 91) / divisor;
+		tick.high = buffer.getLong(offset + 99) / divisor;
+		tick.low = buffer.getLong(offset + 107) / divisor;
+		tick.close = buffer.getLong(offset + 115) / divisor;
+		if (mode == Tick.MODE_QUOTE) {
+			return;
+		}
+
+		tick.lastTradedTimestamp = buffer.getLong(offset + 123);
+		tick.openInterest = buffer.getLong(offset + 131);
+		tick.openInterestChangePercent = buffer.getDouble(offset + 139);
+		int bids = 0;
+		int asks = 0;
+		for (int i = 0; i < 2 * Tick.DEPTH; i++) {
+			int entry = offset + BEST_FIVE_OFFSET + i * BEST_FIVE_ENTRY_SIZE;
+			boolean buy = buffer.getShort(entry) == 1;
+			long quantity = buffer.getLong(entry + 2);
+			double price = buffer.getLong(entry + 10) / divisor;
+			int orders = buffer.getShort(entry + 18);
+			if (buy && bids < Tick.DEPTH) {
+				tick.bidQuantity[bids] = quantity;
+				tick.bidPrice[bids] = price;
+				tick.bidOrders[bids] = orders;
+				bids++;
+			} else if (!buy && asks < Tick.DEPTH) {
+				tick.askQuantity[asks] = quantity;
+				tick.askPrice[asks] = price;
+				tick.askOrders[asks] = orders;
+				asks++;
+			}
+		}
+		tick.upperCircuit = buffer.getLong(offset + 347) / divisor;
+		tick.lowerCircuit = buffer.getLong(offset + 355) / divisor;
+		tick.yearHigh = buffer.getLong(offset + 363) / divisor;
+		tick.yearLow = buffer.getLong(offset + 371) / divisor;
+	}
+
+	/** Parses the NUL padded ASCII token without creating a String. */
+	private static int parseToken(ByteBuffer buffer, int offset) {
+		int token = 0;
+		for (int i = 0; i < TOKEN_LENGTH; i++) {
+			int c = buffer.get(offset + i);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			token = token * 10 + (c - '0');
+		}
+		return token;
+	}
+}
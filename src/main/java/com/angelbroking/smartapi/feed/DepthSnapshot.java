@@ -0,0 +1,41 @@
+package com.angelbroking.smartapi.feed;
+
+/**
+ * Caller-owned copy of the top of book of one token, filled by
+ * {@link DepthStore#read(int, DepthSnapshot)}. Reuse one instance per reader
+ * thread.
+ */
+public class DepthSnapshot {
+
+	public int token;
+	public long version;
+	public long sequenceNumber;
+	public long exchangeTimestamp;
+	public double lastTradedPrice;
+	public double totalBuyQuantity;
+	public double totalSellQuantity;
+	public final double[] bidPrice = new double[Tick.DEPTH];
+	public final long[] bidQuantity = new long[Tick.DEPTH];
+	public final int[] bidOrders = new int[Tick.DEPTH];
+	public final double[] askPrice = new double[Tick.DEPTH];
+	public final long[] askQuantity = new long[Tick.DEPTH];
+	public final int[] askOrders = new int[Tick.DEPTH];
+
+	/** Returns the best bid, or 0 if there is none. */
+	public double bestBid() {
+		return bidPrice[0];
+	}
+
+	/** Returns the best ask, or 0 if there is none. */
+	public double bestAsk() {
+		return askPrice[0];
+	}
+
+	/** Returns the mid price, or the last traded price if a side is empty. */
+	public double mid() {
+		if (bidPrice[0] > 0 && askPrice[0] > 0) {
+			return (bidPrice[0] + askPrice[0]) / 2;
+		}
+		return lastTradedPrice;
+	}
+}
@@ -0,0 +1,162 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Latest top of book per token, written from the ticker decode thread and
+ * read by any number of threads without locks.
+ * 
+ * Each token has a version counter which is odd while its record is being
+ * written (a sequence lock). Readers copy the record into a caller-supplied
+ * {@link DepthSnapshot} and retry if the version changed meanwhile, so
+ * readers never block the writer and always see a consistent book.
+ * 
+ * Writes are serialized among themselves, which lets several connections
+ * share one store. The token-to-slot index is copied on write and published
+ * through a volatile field, since new tokens are rare.
+ */
+public class DepthStore implements OnTick {
+
+	private static final int TOKEN = 0;
+	private static final int SEQUENCE = 1;
+	private static final int TIMESTAMP = 2;
+	private static final int LTP = 3;
+	private static final int TOTAL_BUY = 4;
+	private static final int TOTAL_SELL = 5;
+	private static final int BID_PRICE = 6;
+	private static final int BID_QUANTITY = BID_PRICE + Tick.DEPTH;
+	private static final int BID_ORDERS = BID_QUANTITY + Tick.DEPTH;
+	private static final int ASK_PRICE = BID_ORDERS + Tick.DEPTH;
+	private static final int ASK_QUANTITY = ASK_PRICE + Tick.DEPTH;
+	private static final int ASK_ORDERS = ASK_QUANTITY + Tick.DEPTH;
+	private static final int RECORD_SIZE = ASK_ORDERS + Tick.DEPTH;
+
+	private final int maxTokens;
+	private final AtomicLongArray versions;
+	private final AtomicLongArray records;
+	private volatile IntIntHashMap slots;
+
+	/**
+	 * @param maxTokens is the largest number of tokens stored.
+	 */
+	public DepthStore(int maxTokens) {
+		this.maxTokens = maxTokens;
+		this.versions = new AtomicLongArray(maxTokens);
+		this.records = new AtomicLongArray(maxTokens * RECORD_SIZE);
+		this.slots = new IntIntHashMap(maxTokens, -1);
+	}
+
+	/**
+	 * Stores a tick. LTP ticks update the last price only, quote ticks also the
+	 * totals, and snap quote ticks the full book.
+	 */
+	@Override
+	public synchronized void onTick(Tick tick) {
+		int slot = slotOf(tick.token);
+		if (slot < 0) {
+			return;
+		}
+		int base = slot * RECORD_SIZE;
+		long version = versions.get(slot);
+		versions.set(slot, version + 1);
+
+		records.lazySet(base + TOKEN, tick.token);
+		records.lazySet(base + SEQUENCE, tick.sequenceNumber);
+		records.lazySet(base + TIMESTAMP, tick.exchangeTimestamp);
+		putDouble(base + LTP, tick.lastTradedPrice);
+		if (tick.mode >= Tick.MODE_QUOTE) {
+			putDouble(base + TOTAL_BUY, tick.totalBuyQuantity);
+			putDouble(base + TOTAL_SELL, tick.totalSellQuantity);
+		}
+		if (tick.mode == Tick.MODE_SNAP_QUOTE) {
+			for (int i = 0; i < Tick.DEPTH; i++) {
+				putDouble(base + BID_PRICE + i, tick.bidPrice[i]);
+				records.lazySet(base + BID_QUANTITY + i, tick.bidQuantity[i]);
+				records.lazySet(base + BID_ORDERS + i, tick.bidOrders[i]);
+				putDouble(base + ASK_PRICE + i, tick.askPrice[i]);
+				records.lazySet(base + ASK_QUANTITY + i, tick.askQuantity[i]);
+				records.lazySet(base + ASK_ORDERS + i, tick.askOrders[i]);
+			}
+		}
+
+		versions.lazySet(slot, version + 2);
+	}
+
+	/**
+	 * Copies the latest book of a token.
+	 * 
+	 * @param token    is the instrument token.
+	 * @param snapshot receives the book.
+	 * @return false if nothing has been stored for the token.
+	 */
+	public boolean read(int token, DepthSnapshot snapshot) {
+		int slot = slots.get(token);
+		if (slot < 0) {
+			return false;
+		}
+		int base = slot * RECORD_SIZE;
+		while (true) {
+			long version = versions.get(slot);
+			if (version == 0) {
+				return false;
+			}
+			if ((version & 1) != 0) {
+				continue;
+			}
+			snapshot.token = (int) records.get(base + TOKEN);
+			snapshot.sequenceNumber = records.get(base + SEQUENCE);
+			snapshot.exchangeTimestamp = records.get(base + TIMESTAMP);
+			snapshot.lastTradedPrice = getDouble(base + LTP);
+			snapshot.totalBuyQuantity = getDouble(base + TOTAL_BUY);
+			snapshot.totalSellQuantity = getDouble(base + TOTAL_SELL);
+			for (int i = 0; i < Tick.DEPTH; i++) {
+				snapshot.bidPrice[i] = getDouble(base + BID_PRICE + i);
+				snapshot.bidQuantity[i] = records.get(base + BID_QUANTITY + i);
+				snapshot.bidOrders[i] = (int) records.get(base + BID_ORDERS + i);
+				snapshot.askPrice[i] = getDouble(base + ASK_PRICE + i);
+				snapshot.askQuantity[i] = records.get(base + ASK_QUANTITY + i);
+				snapshot.askOrders[i] = (int) records.get(base + ASK_ORDERS + i);
+			}
+			if (versions.get(slot) == version) {
+				snapshot.version = version;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the version of a token's book, which changes on every write.
+	 * 
+	 * @param token is the instrument token.
+	 * @return version, or -1 if nothing has been stored for the token.
+	 */
+	public long version(int token) {
+		int slot = slots.get(token);
+		return slot < 0 ? -1 : versions.get(slot);
+	}
+
+	private int slotOf(int token) {
+		IntIntHashMap current = slots;
+		int slot = current.get(token);
+		if (slot < 0) {
+			if (current.size() >= maxTokens) {
+				return -1;
+			}
+			slot = current.size();
+			IntIntHashMap updated = new IntIntHashMap(current);
+			updated.put(token, slot);
+			slots = updated;
+		}
+		return slot;
+	}
+
+	private void putDouble(int index, double value) {
+		records.lazySet(index, Double.doubleToRawLongBits(value));
+	}
+
+	private double getDouble(int index) {
+		return Double.longBitsToDouble(records.get(index));
+	}
+}
@@ -0,0 +1,331 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Merges redundant feeds carrying the same subscriptions, delivering whichever
+ * copy of each update arrives first and dropping the others.
+ * 
+ * Typed ticks are identified per token by their sequence number; a tick is
+ * delivered if it is newer than the last one delivered for its token. Packets
+ * without one are ordered by exchange timestamp instead, and one with the
+ * same timestamp as the last delivered is only dropped if its whole payload
+ * matches one of the last few delivered with that timestamp. JSON ticks are identified per token by their text, or by the key
+ * fields when set, and a tick is dropped if it matches one of the last few
+ * delivered for its token.
+ * 
+ * Every feed counts the updates it won and the duplicates it lost, and the
+ * time by which it lost them. Ticks of tokens beyond the tracked maximum are
+ * delivered from every feed and counted apart as untracked.
+ * 
+ * Listeners are called outside the arbiter's lock on the thread of the
+ * winning feed, so they may be called from several feeds at once.
+ */
+public class FeedArbiter {
+
+	private static final int RECENT_KEYS = 8;
+	private static final int RECENT_TICKS = 8;
+
+	private final int maxTokens;
+	private final Input[] inputs;
+	private final long[] wins;
+	private final long[] duplicates;
+	private final long[] untracked;
+	private final LatencyHistogram[] lag;
+	private final IntIntHashMap slots;
+	private final long[] lastKey;
+	private final long[] lastArrival;
+	private final Tick[][] recentTicks;
+	private final int[] recentTickNext;
+	private final int[] recentTickCount;
+	private final String[][] recentKeys;
+	private final int[] recentNext;
+	private final IntIntHashMap jsonSlots;
+	private volatile OnTick onTickListener;
+	private volatile OnTicks onTicksListener;
+	private String[] keyFields = new String[0];
+
+	/**
+	 * @param feedCount is the number of redundant feeds.
+	 * @param maxTokens is the largest number of tokens tracked.
+	 */
+	public FeedArbiter(int feedCount, int maxTokens) {
+		this.maxTokens = maxTokens;
+		this.inputs = new Input[feedCount];
+		this.wins = new long[feedCount];
+		this.duplicates = new long[feedCount];
+		this.untracked = new long[feedCount];
+		this.lag = new LatencyHistogram[feedCount];
+		for (int i = 0; i < feedCount; i++) {
+			inputs[i] = new Input(i);
+			lag[i] = new LatencyHistogram("feed-" + i + " lag");
+		}
+		this.slots = new IntIntHashMap(maxTokens, -1);
+		this.lastKey = new long[maxTokens];
+		this.lastArrival = new long[maxTokens];
+		this.recentTicks = new Tick[maxTokens][];
+		this.recentTickNext = new int[maxTokens];
+		this.recentTickCount = new int[maxTokens];
+		this.jsonSlots = new IntIntHashMap(maxTokens, -1);
+		this.recentKeys = new String[maxTokens][];
+		this.recentNext = new int[maxTokens];
+	}
+
+	/**
+	 * Returns the listener to register with a feed, e.g. as both the tick and
+	 * the tick arrival listener of its ticker.
+	 * 
+	 * @param feed is the index of the feed.
+	 * @return Input
+	 */
+	public Input input(int feed) {
+		return inputs[feed];
+	}
+
+	/**
+	 * Set listener for the first copy of each typed tick.
+	 * 
+	 * @param onTickListener is listener which listens for each tick.
+	 */
+	public void setOnTickListener(OnTick onTickListener) {
+		this.onTickListener = onTickListener;
+	}
+
+	/**
+	 * Set listener for the first copy of each JSON tick, delivered as one array
+	 * per frame.
+	 * 
+	 * @param onTicksListener is listener which listens for each frame.
+	 */
+	public void setOnTickerArrivalListener(OnTicks onTicksListener) {
+		this.onTicksListener = onTicksListener;
+	}
+
+	/**
+	 * Identifies JSON ticks by these fields besides "tk" instead of their whole
+	 * text, for feeds whose copies differ in other fields.
+	 * 
+	 * @param fields are field names such as "ltt" and "v".
+	 */
+	public synchronized void setKeyFields(String... fields) {
+		this.keyFields = fields.clone();
+	}
+
+	/** Returns the number of updates the feed delivered first. */
+	public synchronized long getWins(int feed) {
+		return wins[feed];
+	}
+
+	/** Returns the number of updates the feed delivered after another feed. */
+	public synchronized long getDuplicates(int feed) {
+		return duplicates[feed];
+	}
+
+	/**
+	 * Returns the number of ticks the feed delivered for tokens beyond the
+	 * tracked maximum, or without a sequence number or timestamp, which are
+	 * not arbitrated.
+	 */
+	public synchronized long getUntracked(int feed) {
+		return untracked[feed];
+	}
+
+	/**
+	 * Returns the fraction of arbitrated updates the feed delivered first.
+	 * 
+	 * @param feed is the index of the feed.
+	 * @return win rate between 0 and 1.
+	 */
+	public synchronized double getWinRate(int feed) {
+		long total = 0;
+		for (long count : wins) {
+			total += count;
+		}
+		return total == 0 ? 0 : (double) wins[feed] / total;
+	}
+
+	/**
+	 * Returns how late the feed's typed duplicates arrived behind the winning
+	 * copy.
+	 * 
+	 * @param feed is the index of the feed.
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getLag(int feed) {
+		return lag[feed];
+	}
+
+	private void arbitrate(int feed, Tick tick) {
+		if (accept(feed, tick)) {
+			OnTick listener = onTickListener;
+			if (listener != null) {
+				listener.onTick(tick);
+			}
+		}
+	}
+
+	private synchronized boolean accept(int feed, Tick tick) {
+		boolean sequenced = tick.sequenceNumber != 0;
+		long key = sequenced ? tick.sequenceNumber : tick.exchangeTimestamp;
+		int slot = key != 0 ? slotOf(slots, tick.token) : -1;
+		if (slot < 0) {
+			untracked[feed]++;
+			return true;
+		}
+		if (key < lastKey[slot] || key == lastKey[slot] && (sequenced || isRecent(slot, tick))) {
+			duplicates[feed]++;
+			if (key == lastKey[slot]) {
+				lag[feed].record(System.nanoTime() - lastArrival[slot]);
+			}
+			return false;
+		}
+		if (key != lastKey[slot]) {
+			recentTickCount[slot] = 0;
+		}
+		lastKey[slot] = key;
+		lastArrival[slot] = System.nanoTime();
+		if (!sequenced) {
+			addRecent(slot, tick);
+		}
+		wins[feed]++;
+		return true;
+	}
+
+	/** Returns true if the tick matches one delivered with the last timestamp. */
+	private boolean isRecent(int slot, Tick tick) {
+		Tick[] recent = recentTicks[slot];
+		for (int i = 1; i <= recentTickCount[slot]; i++) {
+			if (samePayload(tick, recent[(recentTickNext[slot] - i + RECENT_TICKS) % RECENT_TICKS])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addRecent(int slot, Tick tick) {
+		Tick[] recent = recentTicks[slot];
+		if (recent == null) {
+			recent = new Tick[RECENT_TICKS];
+			recentTicks[slot] = recent;
+		}
+		int next = recentTickNext[slot];
+		if (recent[next] == null) {
+			recent[next] = new Tick();
+		}
+		recent[next].copyFrom(tick);
+		recentTickNext[slot] = (next + 1) % RECENT_TICKS;
+		recentTickCount[slot] = Math.min(recentTickCount[slot] + 1, RECENT_TICKS);
+	}
+
+	private static boolean samePayload(Tick a, Tick b) {
+		return b != null && a.mode == b.mode && a.exchangeType == b.exchangeType && a.token == b.token
+				&& a.exchangeTimestamp == b.exchangeTimestamp && a.lastTradedPrice == b.lastTradedPrice
+				&& a.lastTradedQuantity == b.lastTradedQuantity && a.averageTradedPrice == b.averageTradedPrice
+				&& a.volume == b.volume && a.totalBuyQuantity == b.totalBuyQuantity
+				&& a.totalSellQuantity == b.totalSellQuantity && a.open == b.open && a.high == b.high
+				&& a.low == b.low && a.close == b.close && a.lastTradedTimestamp == b.lastTradedTimestamp
+				&& a.openInterest == b.openInterest && a.openInterestChangePercent == b.openInterestChangePercent
+				&& Arrays.equals(a.bidPrice, b.bidPrice) && Arrays.equals(a.bidQuantity, b.bidQuantity)
+				&& Arrays.equals(a.bidOrders, b.bidOrders) && Arrays.equals(a.askPrice, b.askPrice)
+				&& Arrays.equals(a.askQuantity, b.askQuantity) && Arrays.equals(a.askOrders, b.askOrders)
+				&& a.upperCircuit == b.upperCircuit && a.lowerCircuit == b.lowerCircuit && a.yearHigh == b.yearHigh
+				&& a.yearLow == b.yearLow;
+	}
+
+	private void arbitrate(int feed, JSONArray ticks) {
+		JSONArray accepted = accept(feed, ticks);
+		OnTicks listener = onTicksListener;
+		if (accepted != null && listener != null) {
+			listener.onTicks(accepted);
+		}
+	}
+
+	private synchronized JSONArray accept(int feed, JSONArray ticks) {
+		JSONArray accepted = null;
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick == null) {
+				continue;
+			}
+			int slot = slotOf(jsonSlots, tick.optInt("tk", 0));
+			if (slot < 0) {
+				untracked[feed]++;
+			} else {
+				String key = key(tick);
+				String[] recent = recentKeys[slot];
+				if (recent == null) {
+					recent = new String[RECENT_KEYS];
+					recentKeys[slot] = recent;
+				}
+				if (contains(recent, key)) {
+					duplicates[feed]++;
+					continue;
+				}
+				recent[recentNext[slot]] = key;
+				recentNext[slot] = (recentNext[slot] + 1) % RECENT_KEYS;
+				wins[feed]++;
+			}
+			if (accepted == null) {
+				accepted = new JSONArray();
+			}
+			accepted.put(tick);
+		}
+		return accepted;
+	}
+
+	private String key(JSONObject tick) {
+		if (keyFields.length == 0) {
+			return tick.toString();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String field : keyFields) {
+			sb.append(tick.opt(field)).append('|');
+		}
+		return sb.toString();
+	}
+
+	private static boolean contains(String[] keys, String key) {
+		for (String candidate : keys) {
+			if (key.equals(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int slotOf(IntIntHashMap map, int token) {
+		int slot = map.get(token);
+		if (slot < 0 && map.size() < maxTokens) {
+			slot = map.size();
+			map.put(token, slot);
+		}
+		return slot;
+	}
+
+	/** Listener receiving the ticks of one feed. */
+	public class Input implements OnTick, OnTicks, SmartWSOnTicks {
+
+		private final int feed;
+
+		Input(int feed) {
+			this.feed = feed;
+		}
+
+		@Override
+		public void onTick(Tick tick) {
+			arbitrate(feed, tick);
+		}
+
+		@Override
+		public void onTicks(JSONArray ticks) {
+			arbitrate(feed, ticks);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-stage latency of a ticker feed.
+ * 
+ * <ul>
+ * <li>network: receipt time minus the exchange timestamp of the tick, when the
+ * payload carries one (binary packets). Includes clock offset between the
+ * exchange and this host.</li>
+ * <li>decode: receipt of the frame until it is decoded (Base64, inflate and
+ * JSON parsing, or binary decoding).</li>
+ * <li>dispatch: time spent in the listeners for the frame.</li>
+ * <li>total: receipt of the frame until all listeners have returned.</li>
+ * </ul>
+ * 
+ * Listener histograms are created on demand by name, so any dispatcher can
+ * time its own subscribers.
+ */
+public class FeedLatencyStats {
+
+	private final LatencyHistogram network = new LatencyHistogram("network");
+	private final LatencyHistogram decode = new LatencyHistogram("decode");
+	private final LatencyHistogram dispatch = new LatencyHistogram("dispatch");
+	private final LatencyHistogram total = new LatencyHistogram("total");
+	private final ConcurrentMap<String, LatencyHistogram> listeners = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	public LatencyHistogram getNetwork() {
+		return network;
+	}
+
+	public LatencyHistogram getDecode() {
+		return decode;
+	}
+
+	public LatencyHistogram getDispatch() {
+		return dispatch;
+	}
+
+	public LatencyHistogram getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the histogram timing a listener, creating it on first use.
+	 * 
+	 * @param name identifies the listener.
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram listener(String name) {
+		LatencyHistogram histogram = listeners.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(name);
+			histogram = listeners.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/** Returns the histograms of the stages followed by those of the listeners. */
+	public List<LatencyHistogram> getHistograms() {
+		List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+		histograms.add(network);
+		histograms.add(decode);
+		histograms.add(dispatch);
+		histograms.add(total);
+		histograms.addAll(listeners.values());
+		return histograms;
+	}
+
+	/** Clears every histogram. */
+	public void reset() {
+		for (LatencyHistogram histogram : getHistograms()) {
+			histogram.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (LatencyHistogram histogram : getHistograms()) {
+			sb.append(histogram).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,357 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Reactive Streams publisher of feed items with per-subscriber demand.
+ * 
+ * Every subscriber has its own bounded buffer filled by the feed thread and
+ * drained on the executor as the subscriber requests items, so a slow
+ * subscriber only ever fills its own buffer. When the buffer is full the
+ * overflow strategy decides whether the oldest or newest item is dropped or
+ * the subscription fails.
+ * 
+ * @param <T> is the type of item published.
+ */
+public abstract class FeedPublisher<T> implements Publisher<T> {
+
+	/** What to do with an item when a subscriber's buffer is full. */
+	public enum Overflow {
+		/** Drop the oldest buffered item to make room. */
+		DROP_OLDEST,
+		/** Drop the arriving item. */
+		DROP_NEWEST,
+		/** Cancel the subscription and signal onError. */
+		ERROR
+	}
+
+	private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smartapi-feed-publisher-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private final int bufferSize;
+	private final Overflow overflow;
+	private final Executor executor;
+	private final boolean copies;
+	private volatile boolean recycling;
+	private volatile Object[] subscriptions = EMPTY;
+	private boolean closed;
+
+	/**
+	 * @param bufferSize is the number of items buffered for each subscriber.
+	 * @param overflow   is applied when a buffer is full.
+	 * @param executor   delivers the items to the subscribers.
+	 * @param copies     is true if {@link #retain(Object, Object)} copies the
+	 *                   item, in which case delivered items may be recycled
+	 *                   (see {@link #setRecycling(boolean)}).
+	 */
+	protected FeedPublisher(int bufferSize, Overflow overflow, Executor executor, boolean copies) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.overflow = overflow;
+		this.executor = executor != null ? executor : DEFAULT_EXECUTOR;
+		this.copies = copies;
+	}
+
+	/**
+	 * Reuses the copies of delivered items for later items once onNext
+	 * returns, saving an allocation per item and subscriber. Off by default:
+	 * only turn it on if every subscriber is done with an item when onNext
+	 * returns, i.e. keeps no reference and hands it to no asynchronous stage
+	 * such as publishOn, buffer or a batching sink.
+	 * 
+	 * @param recycling true to reuse delivered items.
+	 */
+	public void setRecycling(boolean recycling) {
+		this.recycling = recycling;
+	}
+
+	/**
+	 * Returns the item to buffer for a subscriber.
+	 * 
+	 * @param item  is the item published by the feed.
+	 * @param spare is a previously delivered item to reuse, or null.
+	 * @return the item itself, or a copy of it.
+	 */
+	protected abstract T retain(T item, T spare);
+
+	/** Subscribes to every token. */
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		subscribe(subscriber, new int[0]);
+	}
+
+	/**
+	 * Subscribes to the items of the given tokens only.
+	 * 
+	 * @param subscriber receives the items.
+	 * @param tokens     are the instrument tokens, or none for every token.
+	 */
+	public void subscribe(Subscriber<? super T> subscriber, int... tokens) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		FeedSubscription subscription = new FeedSubscription(subscriber, tokens);
+		synchronized (this) {
+			if (closed) {
+				subscription.complete();
+			} else {
+				Object[] current = subscriptions;
+				Object[] updated = new Object[current.length + 1];
+				System.arraycopy(current, 0, updated, 0, current.length);
+				updated[current.length] = subscription;
+				subscriptions = updated;
+			}
+		}
+		subscription.schedule();
+	}
+
+	/**
+	 * Buffers an item for every subscriber interested in the token. Called by
+	 * the feed thread.
+	 * 
+	 * @param token is the instrument token of the item.
+	 * @param item  is the item, which may be reused after the call if the
+	 *              publisher copies.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void publish(int token, T item) {
+		Object[] current = subscriptions;
+		for (int i = 0; i < current.length; i++) {
+			FeedSubscription subscription = (FeedSubscription) current[i];
+			if (subscription.accepts(token)) {
+				subscription.offer(item);
+			}
+		}
+	}
+
+	/** Completes every subscription once its buffered items are delivered. */
+	@SuppressWarnings("unchecked")
+	public void close() {
+		Object[] current;
+		synchronized (this) {
+			closed = true;
+			current = subscriptions;
+			subscriptions = EMPTY;
+		}
+		for (Object subscription : current) {
+			((FeedSubscription) subscription).complete();
+			((FeedSubscription) subscription).schedule();
+		}
+	}
+
+	public int getSubscriberCount() {
+		return subscriptions.length;
+	}
+
+	private synchronized void remove(FeedSubscription subscription) {
+		Object[] current = subscriptions;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == subscription) {
+				Object[] updated = new Object[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				subscriptions = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Subscription of one subscriber. Signals are serialized by a drain loop
+	 * running on the executor.
+	 */
+	public class FeedSubscription implements Subscription, Runnable {
+
+		private final Subscriber<? super T> subscriber;
+		private final IntIntHashMap tokens;
+		private final ArrayDeque<T> buffer;
+		private final ArrayDeque<T> spares;
+		private final AtomicInteger pending = new AtomicInteger();
+		private boolean started;
+		private long demand;
+		private boolean cancelled;
+		private boolean completed;
+		private Throwable error;
+		private long dropped;
+
+		FeedSubscription(Subscriber<? super T> subscriber, int[] tokens) {
+			this.subscriber = subscriber;
+			if (tokens.length == 0) {
+				this.tokens = null;
+			} else {
+				this.tokens = new IntIntHashMap(tokens.length, 0);
+				for (int token : tokens) {
+					this.tokens.put(token, 1);
+				}
+			}
+			this.buffer = new ArrayDeque<T>(Math.min(bufferSize, 1024));
+			this.spares = new ArrayDeque<T>();
+		}
+
+		boolean accepts(int token) {
+			return tokens == null || tokens.containsKey(token);
+		}
+
+		void offer(T item) {
+			boolean ready;
+			synchronized (this) {
+				if (cancelled || completed || error != null) {
+					return;
+				}
+				if (buffer.size() >= bufferSize) {
+					if (overflow == Overflow.DROP_NEWEST) {
+						dropped++;
+						return;
+					} else if (overflow == Overflow.DROP_OLDEST) {
+						T oldest = buffer.poll();
+						if (copies && recycling) {
+							spares.push(oldest);
+						}
+						dropped++;
+					} else {
+						error = new IllegalStateException("subscriber buffer of " + bufferSize + " items overflowed");
+					}
+				}
+				if (error == null) {
+					buffer.add(retain(item, spares.poll()));
+				}
+				ready = demand > 0 || error != null;
+			}
+			if (ready) {
+				schedule();
+			}
+		}
+
+		synchronized void complete() {
+			completed = true;
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized (this) {
+				if (n <= 0) {
+					error = new IllegalArgumentException("request must be positive, was " + n);
+				} else {
+					demand += n;
+					if (demand < 0) {
+						demand = Long.MAX_VALUE;
+					}
+				}
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				buffer.clear();
+				spares.clear();
+			}
+			remove(this);
+		}
+
+		/** Returns the number of items dropped because the buffer was full. */
+		public synchronized long getDroppedCount() {
+			return dropped;
+		}
+
+		/** Returns the number of items waiting for demand. */
+		public synchronized int getBufferedCount() {
+			return buffer.size();
+		}
+
+		void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			while (true) {
+				if (!started) {
+					started = true;
+					subscriber.onSubscribe(this);
+				}
+				drain();
+				missed = pending.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		private void drain() {
+			while (true) {
+				T item = null;
+				Throwable failure = null;
+				boolean done = false;
+				synchronized (this) {
+					if (cancelled) {
+						return;
+					}
+					if (error != null) {
+						failure = error;
+					} else if (demand > 0 && !buffer.isEmpty()) {
+						item = buffer.poll();
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					} else if (completed && buffer.isEmpty()) {
+						done = true;
+					} else {
+						return;
+					}
+				}
+				if (failure != null || done) {
+					cancel();
+					if (failure != null) {
+						subscriber.onError(failure);
+					} else {
+						subscriber.onComplete();
+					}
+					return;
+				}
+				try {
+					subscriber.onNext(item);
+				} catch (RuntimeException e) {
+					cancel();
+					e.printStackTrace();
+					return;
+				}
+				if (copies && recycling) {
+					synchronized (this) {
+						if (!cancelled && spares.size() < bufferSize) {
+							spares.push(item);
+						}
+					}
+				}
+			}
+		}
+	}
+}
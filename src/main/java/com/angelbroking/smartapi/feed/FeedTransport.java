@@ -0,0 +1,49 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.IOException;
+
+/**
+ * WebSocket transport carrying a ticker feed. Implementations exist for
+ * nv-websocket-client ({@link NvWebSocketTransport}) and OkHttp
+ * ({@link OkHttpWebSocketTransport}).
+ * 
+ * A transport holds at most one connection; connecting again replaces it.
+ * Listener callbacks arrive on the transport's reader thread.
+ */
+public interface FeedTransport {
+
+	/**
+	 * Receives the events of one connection.
+	 */
+	interface Listener {
+		void onOpen();
+
+		void onText(String text);
+
+		void onBinary(byte[] binary);
+
+		void onClose();
+
+		void onError(Exception exception);
+	}
+
+	/**
+	 * Opens a connection. May return before the connection is open; onOpen is
+	 * called once it is.
+	 * 
+	 * @param uri      is the feed uri.
+	 * @param listener receives the events of this connection.
+	 * @throws IOException if the connection can't be started.
+	 */
+	void connect(String uri, Listener listener) throws IOException;
+
+	/**
+	 * @return true if the text was queued on an open connection.
+	 */
+	boolean sendText(String text);
+
+	boolean isOpen();
+
+	/** Closes the connection, if any. */
+	void disconnect();
+}
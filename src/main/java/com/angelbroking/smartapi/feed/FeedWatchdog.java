@@ -0,0 +1,465 @@
+package com.angelbroking.smartapi.feed;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Detects feeds which stay connected while their ticks stop.
+ * 
+ * Every token records when it last updated. A periodic check flags tokens
+ * silent for longer than the threshold of their segment (exchange type) and
+ * reconnects watched connections which delivered nothing for their quiet
+ * period. The gaps between consecutive updates of a token are kept per
+ * segment.
+ * 
+ * With a session set, checks only run during it, so the connections left
+ * quiet by the close aren't reconnected all night, and silence is measured
+ * from the session's start at the earliest. A connection whose reconnects
+ * keep bringing no ticks is reconnected less and less often. Reconnects run
+ * on their own threads, so a slow handshake delays no checks.
+ * 
+ * Feed ticks to the watchdog directly, or through the listener returned by
+ * {@link #watch(TickerCore, long)} to also track the connection.
+ */
+public class FeedWatchdog implements OnTick, OnTicks, SmartWSOnTicks {
+
+	private static final int MAX_EXCHANGE_TYPE = 32;
+	private static final long MILLIS = 1000000L;
+	private static final ZoneId EXCHANGE_ZONE = ZoneId.of("Asia/Kolkata");
+	/** Unproductive reconnects after which the quiet period starts doubling. */
+	private static final int BACKOFF_AFTER = 3;
+	private static final int MAX_BACKOFF_SHIFT = 5;
+
+	private static final ScheduledExecutorService SCHEDULER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "smartapi-feed-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static final ExecutorService RECONNECTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smartapi-feed-watchdog-reconnect-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final int maxTokens;
+	private final long defaultThresholdMillis;
+	private final long[] thresholdMillis = new long[MAX_EXCHANGE_TYPE];
+	private final LatencyHistogram[] gaps = new LatencyHistogram[MAX_EXCHANGE_TYPE];
+	private final IntIntHashMap slots;
+	private final int[] tokens;
+	private final int[] exchangeTypes;
+	private final long[] lastUpdate;
+	private final boolean[] stale;
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private OnStale onStaleListener;
+	private ScheduledFuture<?> task;
+	private LocalTime sessionOpen;
+	private LocalTime sessionClose;
+	private boolean weekdaysOnly;
+	private long sessionStart;
+	private boolean inSession;
+
+	/**
+	 * @param maxTokens              is the largest number of tokens tracked.
+	 * @param defaultThresholdMillis is the silence after which a token of a
+	 *                               segment without its own threshold is stale.
+	 */
+	public FeedWatchdog(int maxTokens, long defaultThresholdMillis) {
+		this.maxTokens = maxTokens;
+		this.defaultThresholdMillis = defaultThresholdMillis;
+		this.slots = new IntIntHashMap(maxTokens, -1);
+		this.tokens = new int[maxTokens];
+		this.exchangeTypes = new int[maxTokens];
+		this.lastUpdate = new long[maxTokens];
+		this.stale = new boolean[maxTokens];
+	}
+
+	/**
+	 * Sets the silence after which a token of a segment is stale, e.g. longer
+	 * for illiquid derivatives than for cash.
+	 * 
+	 * @param exchangeType    is the exchange type, e.g. 1 for nse_cm.
+	 * @param thresholdMillis is the threshold in milliseconds.
+	 */
+	public synchronized void setThreshold(int exchangeType, long thresholdMillis) {
+		if (exchangeType < 0 || exchangeType >= MAX_EXCHANGE_TYPE) {
+			throw new IllegalArgumentException("exchangeType must be between 0 and " + (MAX_EXCHANGE_TYPE - 1));
+		}
+		this.thresholdMillis[exchangeType] = thresholdMillis;
+	}
+
+	/**
+	 * Only checks during a daily session in exchange time, e.g. 09:15 to 15:30
+	 * for cash. A session closing before it opens runs past midnight.
+	 * 
+	 * @param open         is the start of the session.
+	 * @param close        is the end of the session.
+	 * @param weekdaysOnly is true to skip Saturdays and Sundays.
+	 */
+	public synchronized void setSession(LocalTime open, LocalTime close, boolean weekdaysOnly) {
+		this.sessionOpen = open;
+		this.sessionClose = close;
+		this.weekdaysOnly = weekdaysOnly;
+		this.inSession = false;
+	}
+
+	/**
+	 * Set listener called once when a token goes stale.
+	 * 
+	 * @param onStaleListener is listener which listens for stale tokens.
+	 */
+	public synchronized void setOnStaleListener(OnStale onStaleListener) {
+		this.onStaleListener = onStaleListener;
+	}
+
+	/**
+	 * Watches a connection, reconnecting it when it delivers no tick for the
+	 * quiet period while open.
+	 * 
+	 * @param core        is the core of the ticker or websocket.
+	 * @param quietMillis is the quiet period in milliseconds.
+	 * @return listener to register for the ticks of the connection.
+	 */
+	public synchronized Connection watch(TickerCore core, long quietMillis) {
+		Connection connection = new Connection(core, quietMillis);
+		connections.add(connection);
+		return connection;
+	}
+
+	/**
+	 * Checks periodically on a shared daemon thread.
+	 * 
+	 * @param periodMillis is the time between checks.
+	 */
+	public synchronized void start(long periodMillis) {
+		stop();
+		task = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					check();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the periodic checks. */
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		update(tick.token, tick.exchangeType, System.nanoTime());
+	}
+
+	@Override
+	public void onTicks(JSONArray ticks) {
+		long now = System.nanoTime();
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick != null && tick.has("tk")) {
+				update(tick.optInt("tk", 0), exchangeType(tick.optString("e", "")), now);
+			}
+		}
+	}
+
+	/**
+	 * Flags stale tokens and reconnects quiet connections.
+	 * 
+	 * @return the number of tokens currently stale.
+	 */
+	public int check() {
+		List<Connection> quiet = new ArrayList<Connection>();
+		List<int[]> flagged = new ArrayList<int[]>();
+		List<Long> silences = new ArrayList<Long>();
+		OnStale listener;
+		int staleCount = 0;
+		long now = System.nanoTime();
+		boolean session = isSession(ZonedDateTime.now(EXCHANGE_ZONE));
+		synchronized (this) {
+			if (!session) {
+				inSession = false;
+				for (Connection connection : connections) {
+					connection.idle();
+				}
+				return 0;
+			}
+			if (!inSession) {
+				inSession = true;
+				sessionStart = now;
+			}
+			listener = onStaleListener;
+			int size = slots.size();
+			for (int slot = 0; slot < size; slot++) {
+				long since = sessionOpen != null && lastUpdate[slot] - sessionStart < 0 ? sessionStart
+						: lastUpdate[slot];
+				long silentMillis = (now - since) / MILLIS;
+				if (silentMillis > threshold(exchangeTypes[slot])) {
+					if (!stale[slot]) {
+						stale[slot] = true;
+						flagged.add(new int[] { tokens[slot], exchangeTypes[slot] });
+						silences.add(silentMillis);
+					}
+					staleCount++;
+				}
+			}
+			for (Connection connection : connections) {
+				if (connection.isQuiet(now)) {
+					quiet.add(connection);
+				}
+			}
+		}
+		if (listener != null) {
+			for (int i = 0; i < flagged.size(); i++) {
+				listener.onStale(flagged.get(i)[0], flagged.get(i)[1], silences.get(i));
+			}
+		}
+		for (Connection connection : quiet) {
+			connection.reconnect(now);
+		}
+		return staleCount;
+	}
+
+	private synchronized boolean isSession(ZonedDateTime time) {
+		if (sessionOpen == null) {
+			return true;
+		}
+		DayOfWeek day = time.getDayOfWeek();
+		if (weekdaysOnly && (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY)) {
+			return false;
+		}
+		LocalTime clock = time.toLocalTime();
+		if (!sessionOpen.isAfter(sessionClose)) {
+			return !clock.isBefore(sessionOpen) && clock.isBefore(sessionClose);
+		}
+		return !clock.isBefore(sessionOpen) || clock.isBefore(sessionClose);
+	}
+
+	/**
+	 * Returns true if the token was flagged stale and has not updated since.
+	 * 
+	 * @param token is the instrument token.
+	 * @return boolean
+	 */
+	public synchronized boolean isStale(int token) {
+		int slot = slots.get(token);
+		return slot >= 0 && stale[slot];
+	}
+
+	/** Returns the tokens currently flagged stale. */
+	public synchronized int[] getStaleTokens() {
+		int count = 0;
+		int[] result = new int[slots.size()];
+		for (int slot = 0; slot < result.length; slot++) {
+			if (stale[slot]) {
+				result[count++] = tokens[slot];
+			}
+		}
+		int[] trimmed = new int[count];
+		System.arraycopy(result, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	/**
+	 * Returns how long a token has been silent.
+	 * 
+	 * @param token is the instrument token.
+	 * @return milliseconds since the last update, or -1 if it never updated.
+	 */
+	public synchronized long getSilentMillis(int token) {
+		int slot = slots.get(token);
+		return slot < 0 ? -1 : (System.nanoTime() - lastUpdate[slot]) / MILLIS;
+	}
+
+	/**
+	 * Returns the gaps between consecutive updates of the tokens of a segment.
+	 * 
+	 * @param exchangeType is the exchange type.
+	 * @return LatencyHistogram, or null if no token of the segment updated twice.
+	 */
+	public synchronized LatencyHistogram getGaps(int exchangeType) {
+		return gaps[exchangeType];
+	}
+
+	/**
+	 * Maps the exchange segment of a JSON tick to its exchange type.
+	 * 
+	 * @param segment is the segment, e.g. "nse_cm".
+	 * @return exchange type, or 0 if unknown.
+	 */
+	public static int exchangeType(String segment) {
+		switch (segment.toLowerCase()) {
+		case "nse_cm":
+			return 1;
+		case "nse_fo":
+			return 2;
+		case "bse_cm":
+			return 3;
+		case "bse_fo":
+			return 4;
+		case "mcx_fo":
+			return 5;
+		case "ncx_fo":
+			return 7;
+		case "cde_fo":
+			return BinaryTickDecoder.EXCHANGE_TYPE_CDE_FO;
+		default:
+			return 0;
+		}
+	}
+
+	private synchronized void update(int token, int exchangeType, long now) {
+		int slot = slots.get(token);
+		if (slot < 0) {
+			if (slots.size() >= maxTokens) {
+				return;
+			}
+			slot = slots.size();
+			slots.put(token, slot);
+			tokens[slot] = token;
+		} else {
+			gap(exchangeType).record(now - lastUpdate[slot]);
+		}
+		exchangeTypes[slot] = exchangeType < 0 || exchangeType >= MAX_EXCHANGE_TYPE ? 0 : exchangeType;
+		lastUpdate[slot] = now;
+		stale[slot] = false;
+	}
+
+	private LatencyHistogram gap(int exchangeType) {
+		int index = exchangeType < 0 || exchangeType >= MAX_EXCHANGE_TYPE ? 0 : exchangeType;
+		if (gaps[index] == null) {
+			gaps[index] = new LatencyHistogram("gap exchangeType=" + index);
+		}
+		return gaps[index];
+	}
+
+	private long threshold(int exchangeType) {
+		long threshold = thresholdMillis[exchangeType];
+		return threshold > 0 ? threshold : defaultThresholdMillis;
+	}
+
+	/** Listener tracking the ticks of one watched connection. */
+	public class Connection implements OnTick, OnTicks, SmartWSOnTicks {
+
+		private final TickerCore core;
+		private final long quietMillis;
+		private volatile long lastTick;
+		private long openSince;
+		private long reconnects;
+		private long lastReconnect;
+		private int unproductiveReconnects;
+		private boolean reconnecting;
+
+		Connection(TickerCore core, long quietMillis) {
+			this.core = core;
+			this.quietMillis = quietMillis;
+		}
+
+		@Override
+		public void onTick(Tick tick) {
+			lastTick = System.nanoTime();
+			FeedWatchdog.this.onTick(tick);
+		}
+
+		@Override
+		public void onTicks(JSONArray ticks) {
+			lastTick = System.nanoTime();
+			FeedWatchdog.this.onTicks(ticks);
+		}
+
+		/** Returns the number of reconnects triggered by the watchdog. */
+		public synchronized long getReconnectCount() {
+			return reconnects;
+		}
+
+		/**
+		 * Returns the number of reconnects in a row after which no tick
+		 * arrived, which lengthen the quiet period.
+		 */
+		public synchronized int getUnproductiveReconnectCount() {
+			return unproductiveReconnects;
+		}
+
+		synchronized boolean isQuiet(long now) {
+			if (reconnecting || !core.isOpen()) {
+				openSince = 0;
+				return false;
+			}
+			if (openSince == 0) {
+				openSince = now;
+			}
+			long last = lastTick;
+			if (unproductiveReconnects > 0 && last - lastReconnect > 0) {
+				unproductiveReconnects = 0;
+			}
+			last = last - openSince > 0 ? last : openSince;
+			int shift = Math.min(Math.max(unproductiveReconnects - BACKOFF_AFTER + 1, 0), MAX_BACKOFF_SHIFT);
+			return (now - last) / MILLIS > quietMillis << shift;
+		}
+
+		/** Restarts the quiet period, e.g. outside the session. */
+		synchronized void idle() {
+			openSince = 0;
+		}
+
+		void reconnect(long now) {
+			synchronized (this) {
+				if (reconnects > 0 && lastTick - lastReconnect <= 0) {
+					unproductiveReconnects++;
+				}
+				reconnects++;
+				lastReconnect = now;
+				openSince = 0;
+				reconnecting = true;
+			}
+			RECONNECTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						core.reconnect();
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						synchronized (Connection.this) {
+							reconnecting = false;
+						}
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.concurrent.Executor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+
+/**
+ * Publishes the JSON ticks of a feed to Reactive Streams subscribers, one
+ * JSONObject per tick. Ticks are filtered on their "tk" token; messages without
+ * one only reach subscribers to every token.
+ */
+public class JsonTickPublisher extends FeedPublisher<JSONObject> implements OnTicks, SmartWSOnTicks {
+
+	/**
+	 * @param bufferSize is the number of ticks buffered for each subscriber.
+	 * @param overflow   is applied when a buffer is full.
+	 */
+	public JsonTickPublisher(int bufferSize, Overflow overflow) {
+		this(bufferSize, overflow, null);
+	}
+
+	/**
+	 * @param bufferSize is the number of ticks buffered for each subscriber.
+	 * @param overflow   is applied when a buffer is full.
+	 * @param executor   delivers the ticks, or null for a shared daemon pool.
+	 */
+	public JsonTickPublisher(int bufferSize, Overflow overflow, Executor executor) {
+		super(bufferSize, overflow, executor, false);
+	}
+
+	@Override
+	public void onTicks(JSONArray ticks) {
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick != null) {
+				publish(tick.optInt("tk", 0), tick);
+			}
+		}
+	}
+
+	@Override
+	protected JSONObject retain(JSONObject item, JSONObject spare) {
+		return item;
+	}
+}
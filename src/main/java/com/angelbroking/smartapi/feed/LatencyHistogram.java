@@ -0,0 +1,118 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds.
+ * 
+ * Values are counted in buckets of 16 sub-buckets per power of two, which
+ * keeps the relative error of a percentile under about 6%. Recording is a
+ * couple of shifts and an atomic increment, so it can run on the reader
+ * thread and be read concurrently from a monitoring thread.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a duration. Negative values, e.g. from clock skew, count as zero.
+	 * 
+	 * @param nanos is the duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = nanos < 0 ? 0 : nanos;
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the value below which the given fraction of durations fall.
+	 * 
+	 * @param fraction is e.g. 0.99 for the 99th percentile.
+	 * @return upper bound of the bucket holding the percentile, in nanoseconds.
+	 */
+	public long percentile(double fraction) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/** Clears all recorded values. */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return name + " [count=" + getCount() + ", p50=" + micros(percentile(0.5)) + "us, p99="
+				+ micros(percentile(0.99)) + "us, p99.9=" + micros(percentile(0.999)) + "us, max=" + micros(getMax())
+				+ "us]";
+	}
+
+	private static String micros(long nanos) {
+		return String.format("%.1f", nanos / 1000.0);
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+	}
+}
@@ -0,0 +1,104 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import com.angelbroking.smartapi.utils.NaiveSSLContext;
+import com.neovisionaries.ws.client.WebSocket;
+import com.neovisionaries.ws.client.WebSocketAdapter;
+import com.neovisionaries.ws.client.WebSocketException;
+import com.neovisionaries.ws.client.WebSocketFactory;
+import com.neovisionaries.ws.client.WebSocketFrame;
+
+/**
+ * Feed transport on nv-websocket-client. Each connection has its own reading
+ * and writing threads. Connecting blocks until the handshake completes.
+ */
+public class NvWebSocketTransport implements FeedTransport {
+
+	private volatile WebSocket ws;
+
+	@Override
+	public void connect(String uri, Listener listener) throws IOException {
+		SSLContext context;
+		try {
+			context = NaiveSSLContext.getInstance("TLS");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		WebSocket socket = new WebSocketFactory().setSSLContext(context).setVerifyHostname(false).createSocket(uri);
+		socket.addListener(adapter(listener));
+		ws = socket;
+		try {
+			socket.connect();
+		} catch (WebSocketException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public boolean sendText(String text) {
+		WebSocket socket = ws;
+		if (socket == null || !socket.isOpen()) {
+			return false;
+		}
+		socket.sendText(text);
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		WebSocket socket = ws;
+		return socket != null && socket.isOpen();
+	}
+
+	@Override
+	public void disconnect() {
+		WebSocket socket = ws;
+		if (socket != null && socket.isOpen()) {
+			socket.disconnect();
+		}
+	}
+
+	/**
+	 * Returns a WebSocketAdapter forwarding nv-websocket-client events to a
+	 * transport listener.
+	 * 
+	 * @param listener receives the events.
+	 * @return WebSocketAdapter
+	 */
+	public static WebSocketAdapter adapter(final Listener listener) {
+		return new WebSocketAdapter() {
+
+			@Override
+			public void onConnected(WebSocket websocket, Map<String, List<String>> headers) {
+				listener.onOpen();
+			}
+
+			@Override
+			public void onTextMessage(WebSocket websocket, String message) {
+				listener.onText(message);
+			}
+
+			@Override
+			public void onBinaryMessage(WebSocket websocket, byte[] binary) {
+				listener.onBinary(binary);
+			}
+
+			@Override
+			public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+					WebSocketFrame clientCloseFrame, boolean closedByServer) {
+				listener.onClose();
+			}
+
+			@Override
+			public void onError(WebSocket websocket, WebSocketException cause) {
+				listener.onError(cause);
+			}
+		};
+	}
+}
@@ -0,0 +1,105 @@
+package com.angelbroking.smartapi.feed;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Feed transport on OkHttp's WebSocket. Passing the client used for REST
+ * calls (see SmartConnect.getHttpClient()) shares its dispatcher, connection
+ * pool and TLS setup with the feed.
+ */
+public class OkHttpWebSocketTransport implements FeedTransport {
+
+	private final OkHttpClient client;
+	private volatile Connection connection;
+
+	public OkHttpWebSocketTransport() {
+		this(new OkHttpClient());
+	}
+
+	public OkHttpWebSocketTransport(OkHttpClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public void connect(String uri, Listener listener) {
+		Connection next = new Connection(listener);
+		connection = next;
+		next.webSocket = client.newWebSocket(new Request.Builder().url(uri).build(), next);
+	}
+
+	@Override
+	public boolean sendText(String text) {
+		Connection current = connection;
+		return current != null && current.open && current.webSocket.send(text);
+	}
+
+	@Override
+	public boolean isOpen() {
+		Connection current = connection;
+		return current != null && current.open;
+	}
+
+	@Override
+	public void disconnect() {
+		Connection current = connection;
+		if (current != null) {
+			current.webSocket.close(1000, null);
+		}
+	}
+
+	/**
+	 * One socket and its open state, so that the late close of a replaced
+	 * socket doesn't mark its successor closed.
+	 */
+	private static final class Connection extends WebSocketListener {
+
+		private final Listener listener;
+		private volatile WebSocket webSocket;
+		private volatile boolean open;
+
+		Connection(Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void onOpen(WebSocket webSocket, Response response) {
+			this.webSocket = webSocket;
+			open = true;
+			listener.onOpen();
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, String text) {
+			listener.onText(text);
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, ByteString bytes) {
+			listener.onBinary(bytes.toByteArray());
+		}
+
+		@Override
+		public void onClosing(WebSocket webSocket, int code, String reason) {
+			open = false;
+			webSocket.close(code, null);
+		}
+
+		@Override
+		public void onClosed(WebSocket webSocket, int code, String reason) {
+			open = false;
+			listener.onClose();
+		}
+
+		@Override
+		public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+			open = false;
+			listener.onError(t instanceof Exception ? (Exception) t : new Exception(t));
+			listener.onClose();
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package com.angelbroking.smartapi.feed;
+
+public interface OnBar {
+	void onBar(int token, long intervalMillis, long startTime, double open, double high, double low, double close,
+			long volume);
+}
@@ -0,0 +1,5 @@
+package com.angelbroking.smartapi.feed;
+
+public interface OnStale {
+	void onStale(int token, int exchangeType, long silentMillis);
+}
@@ -0,0 +1,5 @@
+package com.angelbroking.smartapi.feed;
+
+public interface OnTick {
+	void onTick(Tick tick);
+}
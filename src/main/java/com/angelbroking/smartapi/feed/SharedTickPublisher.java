@@ -0,0 +1,152 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+
+/**
+ * Writes the decoded ticks of a feed into a memory-mapped broadcast ring, so
+ * one process per host owns the connection and other processes read the ticks
+ * with a {@link SharedTickSubscriber}. Place the file on a tmpfs such as
+ * /dev/shm to keep it off the disk.
+ * 
+ * The writer never waits for readers; a reader which falls a whole ring behind
+ * loses the overwritten ticks and counts them. Typed ticks are stored in their
+ * binary layout, JSON ticks as their text, one tick per slot.
+ */
+public class SharedTickPublisher implements OnTick, OnTicks, SmartWSOnTicks, Closeable {
+
+	public static final int DEFAULT_SLOT_COUNT = 65536;
+	public static final int DEFAULT_SLOT_SIZE = 512;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer ring;
+	private final int slotSize;
+	private final int slotCount;
+	private long cursor;
+	private long dropped;
+
+	/**
+	 * Opens a ring with default geometry.
+	 * 
+	 * @param path is the ring file.
+	 * @throws IOException if the file can't be mapped.
+	 */
+	public SharedTickPublisher(File path) throws IOException {
+		this(path, DEFAULT_SLOT_COUNT, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * Opens a ring, continuing its sequence if the file already holds a ring of
+	 * the same geometry so running subscribers carry on.
+	 * 
+	 * @param path      is the ring file.
+	 * @param slotCount is the number of slots, a power of two.
+	 * @param slotSize  is the size of a slot in bytes, large enough for a tick.
+	 * @throws IOException if the file can't be mapped.
+	 */
+	public SharedTickPublisher(File path, int slotCount, int slotSize) throws IOException {
+		if (slotCount <= 0 || (slotCount & (slotCount - 1)) != 0) {
+			throw new IllegalArgumentException("slotCount must be a power of two");
+		}
+		if (slotSize < SharedTickRing.SLOT_HEADER_SIZE + SharedTickRing.TICK_SIZE || slotSize % 8 != 0) {
+			throw new IllegalArgumentException("slotSize must be a multiple of 8 of at least "
+					+ (SharedTickRing.SLOT_HEADER_SIZE + SharedTickRing.TICK_SIZE));
+		}
+		this.slotCount = slotCount;
+		this.slotSize = slotSize;
+		long size = SharedTickRing.HEADER_SIZE + (long) slotCount * slotSize;
+		this.file = new RandomAccessFile(path, "rw");
+		try {
+			this.ring = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		ring.order(ByteOrder.LITTLE_ENDIAN);
+		if (ring.getLong(0) == SharedTickRing.MAGIC && ring.getInt(SharedTickRing.SLOT_SIZE_OFFSET) == slotSize
+				&& ring.getInt(SharedTickRing.SLOT_COUNT_OFFSET) == slotCount) {
+			cursor = ring.getLong(SharedTickRing.CURSOR_OFFSET);
+		} else {
+			ring.putLong(0, 0);
+			ring.putInt(SharedTickRing.SLOT_SIZE_OFFSET, slotSize);
+			ring.putInt(SharedTickRing.SLOT_COUNT_OFFSET, slotCount);
+			ring.putLong(SharedTickRing.CURSOR_OFFSET, 0);
+			for (int i = 0; i < slotCount; i++) {
+				ring.putLong(SharedTickRing.HEADER_SIZE + i * slotSize, -1);
+			}
+			SharedTickRing.storeFence();
+			ring.putLong(0, SharedTickRing.MAGIC);
+		}
+	}
+
+	@Override
+	public synchronized void onTick(Tick tick) {
+		int offset = begin();
+		SharedTickRing.writeTick(ring, offset + SharedTickRing.SLOT_HEADER_SIZE, tick);
+		commit(offset, SharedTickRing.KIND_TICK, SharedTickRing.TICK_SIZE);
+	}
+
+	@Override
+	public synchronized void onTicks(JSONArray ticks) {
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick == null) {
+				continue;
+			}
+			byte[] text = tick.toString().getBytes(StandardCharsets.UTF_8);
+			if (text.length > slotSize - SharedTickRing.SLOT_HEADER_SIZE) {
+				dropped++;
+				continue;
+			}
+			int offset = begin();
+			for (int j = 0; j < text.length; j++) {
+				ring.put(offset + SharedTickRing.SLOT_HEADER_SIZE + j, text[j]);
+			}
+			commit(offset, SharedTickRing.KIND_TEXT, text.length);
+		}
+	}
+
+	/** Returns the sequence of the next tick. */
+	public synchronized long getCursor() {
+		return cursor;
+	}
+
+	/** Returns the number of JSON ticks too large for a slot. */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	private int begin() {
+		int offset = SharedTickRing.slotOffset(cursor, slotCount, slotSize);
+		ring.putLong(offset, -1);
+		SharedTickRing.storeFence();
+		return offset;
+	}
+
+	private void commit(int offset, int kind, int length) {
+		ring.putInt(offset + 8, kind);
+		ring.putInt(offset + 12, length);
+		SharedTickRing.storeFence();
+		ring.putLong(offset, cursor);
+		cursor++;
+		ring.putLong(SharedTickRing.CURSOR_OFFSET, cursor);
+		SharedTickRing.storeFence();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,170 @@
+package com.angelbroking.smartapi.feed;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the memory-mapped broadcast ring shared by a
+ * {@link SharedTickPublisher} and any number of {@link SharedTickSubscriber}s
+ * in other processes on the same host.
+ * 
+ * <pre>
+ * header: long magic | int slotSize | int slotCount | long cursor | padding to 64 bytes
+ * slot:   long sequence | int kind | int length | payload
+ * </pre>
+ * 
+ * The cursor is the sequence of the next record. A record's sequence is
+ * cleared before its slot is rewritten and stored after the payload, so a
+ * reader which sees the same sequence before and after copying the payload has
+ * a consistent record; otherwise the writer has lapped it. All values are
+ * little-endian.
+ */
+final class SharedTickRing {
+
+	static final long MAGIC = 0x534d41525452494eL;
+	static final int HEADER_SIZE = 64;
+	static final int SLOT_SIZE_OFFSET = 8;
+	static final int SLOT_COUNT_OFFSET = 12;
+	static final int CURSOR_OFFSET = 16;
+	static final int SLOT_HEADER_SIZE = 16;
+
+	static final int KIND_TICK = 1;
+	static final int KIND_TEXT = 2;
+
+	/** Encoded size of a {@link Tick}. */
+	static final int TICK_SIZE = 3 * 4 + 6 * 8 + 13 * 8 + 2 * Tick.DEPTH * (8 + 8 + 4);
+
+	/**
+	 * Unsafe.storeFence and Unsafe.loadFence, the explicit fences of Java 8,
+	 * order the plain accesses of the mapped buffer. They are looked up
+	 * reflectively, since Unsafe is not a public API, and bound into constant
+	 * method handles which the JIT compiles down to the fence itself.
+	 */
+	private static final MethodHandle STORE_FENCE;
+	private static final MethodHandle LOAD_FENCE;
+
+	static {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			MethodType type = MethodType.methodType(void.class);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			STORE_FENCE = lookup.findVirtual(unsafeClass, "storeFence", type).bindTo(unsafe);
+			LOAD_FENCE = lookup.findVirtual(unsafeClass, "loadFence", type).bindTo(unsafe);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private SharedTickRing() {
+	}
+
+	/**
+	 * Keeps earlier reads and writes of the ring from being reordered after
+	 * later writes.
+	 */
+	static void storeFence() {
+		try {
+			STORE_FENCE.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Keeps earlier reads of the ring from being reordered after later reads
+	 * and writes.
+	 */
+	static void loadFence() {
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static int slotOffset(long sequence, int slotCount, int slotSize) {
+		return HEADER_SIZE + (int) (sequence & (slotCount - 1)) * slotSize;
+	}
+
+	static void writeTick(ByteBuffer buffer, int offset, Tick tick) {
+		int p = offset;
+		buffer.putInt(p, tick.mode);
+		buffer.putInt(p + 4, tick.exchangeType);
+		buffer.putInt(p + 8, tick.token);
+		p += 12;
+		buffer.putLong(p, tick.sequenceNumber);
+		buffer.putLong(p + 8, tick.exchangeTimestamp);
+		buffer.putLong(p + 16, tick.lastTradedQuantity);
+		buffer.putLong(p + 24, tick.volume);
+		buffer.putLong(p + 32, tick.lastTradedTimestamp);
+		buffer.putLong(p + 40, tick.openInterest);
+		p += 48;
+		buffer.putDouble(p, tick.lastTradedPrice);
+		buffer.putDouble(p + 8, tick.averageTradedPrice);
+		buffer.putDouble(p + 16, tick.totalBuyQuantity);
+		buffer.putDouble(p + 24, tick.totalSellQuantity);
+		buffer.putDouble(p + 32, tick.open);
+		buffer.putDouble(p + 40, tick.high);
+		buffer.putDouble(p + 48, tick.low);
+		buffer.putDouble(p + 56, tick.close);
+		buffer.putDouble(p + 64, tick.openInterestChangePercent);
+		buffer.putDouble(p + 72, tick.upperCircuit);
+		buffer.putDouble(p + 80, tick.lowerCircuit);
+		buffer.putDouble(p + 88, tick.yearHigh);
+		buffer.putDouble(p + 96, tick.yearLow);
+		p += 104;
+		for (int i = 0; i < Tick.DEPTH; i++) {
+			buffer.putDouble(p, tick.bidPrice[i]);
+			buffer.putLong(p + 8, tick.bidQuantity[i]);
+			buffer.putInt(p + 16, tick.bidOrders[i]);
+			buffer.putDouble(p + 20, tick.askPrice[i]);
+			buffer.putLong(p + 28, tick.askQuantity[i]);
+			buffer.putInt(p + 36, tick.askOrders[i]);
+			p += 40;
+		}
+	}
+
+	static void readTick(ByteBuffer buffer, int offset, Tick tick) {
+		int p = offset;
+		tick.mode = buffer.getInt(p);
+		tick.exchangeType = buffer.getInt(p + 4);
+		tick.token = buffer.getInt(p + 8);
+		p += 12;
+		tick.sequenceNumber = buffer.getLong(p);
+		tick.exchangeTimestamp = buffer.getLong(p + 8);
+		tick.lastTradedQuantity = buffer.getLong(p + 16);
+		tick.volume = buffer.getLong(p + 24);
+		tick.lastTradedTimestamp = buffer.getLong(p + 32);
+		tick.openInterest = buffer.getLong(p + 40);
+		p += 48;
+		tick.lastTradedPrice = buffer.getDouble(p);
+		tick.averageTradedPrice = buffer.getDouble(p + 8);
+		tick.totalBuyQuantity = buffer.getDouble(p + 16);
+		tick.totalSellQuantity = buffer.getDouble(p + 24);
+		tick.open = buffer.getDouble(p + 32);
+		tick.high = buffer.getDouble(p + 40);
+		tick.low = buffer.getDouble(p + 48);
+		tick.close = buffer.getDouble(p + 56);
+		tick.openInterestChangePercent = buffer.getDouble(p + 64);
+		tick.upperCircuit = buffer.getDouble(p + 72);
+		tick.lowerCircuit = buffer.getDouble(p + 80);
+		tick.yearHigh = buffer.getDouble(p + 88);
+		tick.yearLow = buffer.getDouble(p + 96);
+		p += 104;
+		for (int i = 0; i < Tick.DEPTH; i++) {
+			tick.bidPrice[i] = buffer.getDouble(p);
+			tick.bidQuantity[i] = buffer.getLong(p + 8);
+			tick.bidOrders[i] = buffer.getInt(p + 16);
+			tick.askPrice[i] = buffer.getDouble(p + 20);
+			tick.askQuantity[i] = buffer.getLong(p + 28);
+			tick.askOrders[i] = buffer.getInt(p + 36);
+			p += 40;
+		}
+	}
+}
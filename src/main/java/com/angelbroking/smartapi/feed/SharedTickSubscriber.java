@@ -0,0 +1,155 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.ticker.OnTicks;
+
+/**
+ * Reads the ticks a {@link SharedTickPublisher} in another process writes into
+ * a memory-mapped ring. Polling takes no lock and makes no system call, so a
+ * reader spinning on {@link #poll(OnTick, OnTicks)} sees a tick within a
+ * fraction of a microsecond of its publication.
+ * 
+ * Not thread safe; each reading thread opens its own subscriber.
+ */
+public class SharedTickSubscriber implements Closeable {
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer ring;
+	private final int slotSize;
+	private final int slotCount;
+	private final Tick tick = new Tick();
+	private final byte[] text;
+	private long next;
+	private long lost;
+
+	/**
+	 * Opens a ring, starting at the next tick published.
+	 * 
+	 * @param path is the ring file created by the publisher.
+	 * @throws IOException if the file isn't a ring.
+	 */
+	public SharedTickSubscriber(File path) throws IOException {
+		this.file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < SharedTickRing.HEADER_SIZE) {
+				throw new IOException(path + " is not a tick ring");
+			}
+			this.ring = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			ring.order(ByteOrder.LITTLE_ENDIAN);
+			if (ring.getLong(0) != SharedTickRing.MAGIC) {
+				throw new IOException(path + " is not a tick ring");
+			}
+			this.slotSize = ring.getInt(SharedTickRing.SLOT_SIZE_OFFSET);
+			this.slotCount = ring.getInt(SharedTickRing.SLOT_COUNT_OFFSET);
+			if (channel.size() < SharedTickRing.HEADER_SIZE + (long) slotCount * slotSize) {
+				throw new IOException(path + " is truncated");
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		this.text = new byte[slotSize - SharedTickRing.SLOT_HEADER_SIZE];
+		this.next = cursor();
+	}
+
+	/**
+	 * Delivers the ticks published since the last poll.
+	 * 
+	 * @param tickListener receives typed ticks; the tick is reused.
+	 * @param jsonListener receives the JSON ticks of the poll as one array, or
+	 *                     null to skip them.
+	 * @return the number of ticks delivered.
+	 */
+	public int poll(OnTick tickListener, OnTicks jsonListener) {
+		long cursor = cursor();
+		if (cursor - next > slotCount) {
+			lost += cursor - slotCount - next;
+			next = cursor - slotCount;
+		}
+		int delivered = 0;
+		JSONArray json = null;
+		while (next < cursor) {
+			int offset = SharedTickRing.slotOffset(next, slotCount, slotSize);
+			long sequence = ring.getLong(offset);
+			SharedTickRing.loadFence();
+			if (sequence != next) {
+				if (sequence == -1 || sequence > next) {
+					lost++;
+					next++;
+					continue;
+				}
+				break;
+			}
+			int kind = ring.getInt(offset + 8);
+			int length = ring.getInt(offset + 12);
+			if (kind == SharedTickRing.KIND_TICK) {
+				SharedTickRing.readTick(ring, offset + SharedTickRing.SLOT_HEADER_SIZE, tick);
+			} else if (kind == SharedTickRing.KIND_TEXT && length <= text.length) {
+				for (int i = 0; i < length; i++) {
+					text[i] = ring.get(offset + SharedTickRing.SLOT_HEADER_SIZE + i);
+				}
+			}
+			SharedTickRing.loadFence();
+			if (ring.getLong(offset) != sequence) {
+				lost++;
+				next++;
+				continue;
+			}
+			next++;
+			if (kind == SharedTickRing.KIND_TICK) {
+				if (tickListener != null) {
+					tickListener.onTick(tick);
+				}
+				delivered++;
+			} else if (kind == SharedTickRing.KIND_TEXT && jsonListener != null) {
+				if (json == null) {
+					json = new JSONArray();
+				}
+				json.put(new JSONObject(new String(text, 0, length, StandardCharsets.UTF_8)));
+				delivered++;
+			}
+		}
+		if (json != null) {
+			jsonListener.onTicks(json);
+		}
+		return delivered;
+	}
+
+	/** Skips every tick published so far. */
+	public void seekToEnd() {
+		next = cursor();
+	}
+
+	/** Returns the number of ticks overwritten before they were read. */
+	public long getLostCount() {
+		return lost;
+	}
+
+	/** Returns the number of ticks published but not yet read. */
+	public long getBacklog() {
+		return cursor() - next;
+	}
+
+	private long cursor() {
+		long cursor = ring.getLong(SharedTickRing.CURSOR_OFFSET);
+		SharedTickRing.loadFence();
+		return cursor;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,132 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.Arrays;
+
+/**
+ * A decoded market data tick.
+ * 
+ * Instances are reused by the decoders; listeners which keep a tick beyond the
+ * callback must {@link #copyFrom(Tick) copy} it. Prices are in rupees, fields
+ * not carried by the packet's mode are left at zero.
+ */
+public class Tick {
+
+	/** Subscription modes. */
+	public static final int MODE_LTP = 1;
+	public static final int MODE_QUOTE = 2;
+	public static final int MODE_SNAP_QUOTE = 3;
+
+	/** Number of depth levels on each side. */
+	public static final int DEPTH = 5;
+
+	public int mode;
+	public int exchangeType;
+	public int token;
+	public long sequenceNumber;
+	public long exchangeTimestamp;
+	public double lastTradedPrice;
+
+	public long lastTradedQuantity;
+	public double averageTradedPrice;
+	public long volume;
+	public double totalBuyQuantity;
+	public double totalSellQuantity;
+	public double open;
+	public double high;
+	public double low;
+	public double close;
+
+	public long lastTradedTimestamp;
+	public long openInterest;
+	public double openInterestChangePercent;
+	public final double[] bidPrice = new double[DEPTH];
+	public final long[] bidQuantity = new long[DEPTH];
+	public final int[] bidOrders = new int[DEPTH];
+	public final double[] askPrice = new double[DEPTH];
+	public final long[] askQuantity = new long[DEPTH];
+	public final int[] askOrders = new int[DEPTH];
+	public double upperCircuit;
+	public double lowerCircuit;
+	public double yearHigh;
+	public double yearLow;
+
+	/** Clears every field. */
+	public void reset() {
+		mode = 0;
+		exchangeType = 0;
+		token = 0;
+		sequenceNumber = 0;
+		exchangeTimestamp = 0;
+		lastTradedPrice = 0;
+		lastTradedQuantity = 0;
+		averageTradedPrice = 0;
+		volume = 0;
+		totalBuyQuantity = 0;
+		totalSellQuantity = 0;
+		open = 0;
+		high = 0;
+		low = 0;
+		close = 0;
+		lastTradedTimestamp = 0;
+		openInterest = 0;
+		openInterestChangePercent = 0;
+		Arrays.fill(bidPrice, 0);
+		Arrays.fill(bidQuantity, 0);
+		Arrays.fill(bidOrders, 0);
+		Arrays.fill(askPrice, 0);
+		Arrays.fill(askQuantity, 0);
+		Arrays.fill(askOrders, 0);
+		upperCircuit = 0;
+		lowerCircuit = 0;
+		yearHigh = 0;
+		yearLow = 0;
+	}
+
+	/**
+	 * Copies every field of another tick into this one.
+	 * 
+	 * @param other is the tick to copy.
+	 * @return this tick.
+	 */
+	public Tick copyFrom(Tick other) {
+		mode = other.mode;
+		exchangeType = other.exchangeType;
+		token = other.token;
+		sequenceNumber = other.sequenceNumber;
+		exchangeTimestamp = other.exchangeTimestamp;
+		lastTradedPrice = other.lastTradedPrice;
+		lastTradedQuantity = other.lastTradedQuantity;
+		averageTradedPrice = other.averageTradedPrice;
+		volume = other.volume;
+		totalBuyQuantity = other.totalBuyQuantity;
+		totalSellQuantity = other.totalSellQuantity;
+		open = other.open;
+		high = other.high;
+		low = other.low;
+		close = other.close;
+		lastTradedTimestamp = other.lastTradedTimestamp;
+		openInterest = other.openInterest;
+		openInterestChangePercent = other.openInterestChangePercent;
+		System.arraycopy(other.bidPrice, 0, bidPrice, 0, DEPTH);
+		System.arraycopy(other.bidQuantity, 0, bidQuantity, 0, DEPTH);
+		System.arraycopy(other.bidOrders, 0, bidOrders, 0, DEPTH);
+		System.arraycopy(other.askPrice, 0, askPrice, 0, DEPTH);
+		System.arraycopy(other.askQuantity, 0, askQuantity, 0, DEPTH);
+		System.arraycopy(other.askOrders, 0, askOrders, 0, DEPTH);
+		upperCircuit = other.upperCircuit;
+		lowerCircuit = other.lowerCircuit;
+		yearHigh = other.yearHigh;
+		yearLow = other.yearLow;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "Tick [mode=" + mode + ", exchangeType=" + exchangeType + ", token=" + token + ", sequenceNumber="
+				+ sequenceNumber + ", exchangeTimestamp=" + exchangeTimestamp + ", lastTradedPrice=" + lastTradedPrice
+				+ ", lastTradedQuantity=" + lastTradedQuantity + ", averageTradedPrice=" + averageTradedPrice
+				+ ", volume=" + volume + ", open=" + open + ", high=" + high + ", low=" + low + ", close=" + close
+				+ ", openInterest=" + openInterest + ", bidPrice=" + Arrays.toString(bidPrice) + ", askPrice="
+				+ Arrays.toString(askPrice) + "]";
+	}
+}
@@ -0,0 +1,241 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Fans the ticks of a feed out to many listeners, each interested in its own
+ * set of tokens.
+ * 
+ * Listeners are indexed by token, so a tick only costs the listeners
+ * registered for its token plus those registered for every token. The index
+ * is rebuilt on registration and published through a volatile field, so
+ * dispatch takes no lock. JSON ticks are grouped per listener and delivered
+ * as one array per frame.
+ * 
+ * Register the bus as the tick listener of a ticker, websocket or replayer.
+ */
+public class TickBus implements OnTick, OnTicks, SmartWSOnTicks {
+
+	private static final int[] ALL_TOKENS = new int[0];
+
+	private final List<Entry> tickEntries = new ArrayList<Entry>();
+	private final List<Entry> jsonEntries = new ArrayList<Entry>();
+	private volatile Index tickIndex = new Index(tickEntries);
+	private volatile Index jsonIndex = new Index(jsonEntries);
+	private volatile FeedLatencyStats latencyStats;
+	private JSONArray[] pending = new JSONArray[0];
+
+	/**
+	 * Adds a listener for typed ticks.
+	 * 
+	 * @param name     identifies the listener in the latency stats.
+	 * @param listener receives the ticks.
+	 * @param tokens   are the instrument tokens, or none for every token.
+	 */
+	public synchronized void addTickListener(String name, OnTick listener, int... tokens) {
+		tickEntries.add(new Entry(name, listener, tokens));
+		tickIndex = new Index(tickEntries);
+	}
+
+	/**
+	 * Adds a listener for JSON ticks, matched on their "tk" token.
+	 * 
+	 * @param name     identifies the listener in the latency stats.
+	 * @param listener receives the ticks of each frame for its tokens.
+	 * @param tokens   are the instrument tokens, or none for every token.
+	 */
+	public synchronized void addJsonTicksListener(String name, OnTicks listener, int... tokens) {
+		jsonEntries.add(new Entry(name, listener, tokens));
+		jsonIndex = new Index(jsonEntries);
+	}
+
+	/** Removes every registration of a listener. */
+	public synchronized void removeListener(Object listener) {
+		if (remove(tickEntries, listener)) {
+			tickIndex = new Index(tickEntries);
+		}
+		if (remove(jsonEntries, listener)) {
+			jsonIndex = new Index(jsonEntries);
+		}
+	}
+
+	/**
+	 * Times every listener call under the listener's name.
+	 * 
+	 * @param latencyStats receives the timings, or null to stop timing.
+	 */
+	public void setLatencyStats(FeedLatencyStats latencyStats) {
+		this.latencyStats = latencyStats;
+	}
+
+	/**
+	 * Returns the number of listeners a tick of the token reaches.
+	 * 
+	 * @param token is the instrument token.
+	 * @return int
+	 */
+	public int getListenerCount(int token) {
+		return tickIndex.lookup(token).length + tickIndex.all.length + jsonIndex.lookup(token).length
+				+ jsonIndex.all.length;
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		Index index = tickIndex;
+		deliver(index.entries, index.lookup(tick.token), tick);
+		deliver(index.entries, index.all, tick);
+	}
+
+	@Override
+	public synchronized void onTicks(JSONArray ticks) {
+		Index index = jsonIndex;
+		if (index.size == 0) {
+			return;
+		}
+		if (pending.length < index.size) {
+			pending = new JSONArray[index.size];
+		}
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick == null) {
+				continue;
+			}
+			collect(index.lookup(tick.optInt("tk", 0)), tick);
+			collect(index.all, tick);
+		}
+		for (int i = 0; i < index.size; i++) {
+			JSONArray group = pending[i];
+			if (group != null) {
+				pending[i] = null;
+				Entry entry = index.entries[i];
+				FeedLatencyStats stats = latencyStats;
+				if (stats == null) {
+					((OnTicks) entry.listener).onTicks(group);
+				} else {
+					long start = System.nanoTime();
+					((OnTicks) entry.listener).onTicks(group);
+					stats.listener(entry.name).record(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	private void collect(int[] positions, JSONObject tick) {
+		for (int position : positions) {
+			JSONArray group = pending[position];
+			if (group == null) {
+				group = new JSONArray();
+				pending[position] = group;
+			}
+			group.put(tick);
+		}
+	}
+
+	private void deliver(Entry[] entries, int[] positions, Tick tick) {
+		FeedLatencyStats stats = latencyStats;
+		for (int position : positions) {
+			Entry entry = entries[position];
+			if (stats == null) {
+				((OnTick) entry.listener).onTick(tick);
+			} else {
+				long start = System.nanoTime();
+				((OnTick) entry.listener).onTick(tick);
+				stats.listener(entry.name).record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private static boolean remove(List<Entry> entries, Object listener) {
+		boolean removed = false;
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			if (entries.get(i).listener == listener) {
+				entries.remove(i);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	private static final class Entry {
+		final String name;
+		final Object listener;
+		final int[] tokens;
+
+		Entry(String name, Object listener, int[] tokens) {
+			if (listener == null) {
+				throw new NullPointerException("listener");
+			}
+			this.name = name;
+			this.listener = listener;
+			this.tokens = tokens == null ? ALL_TOKENS : tokens.clone();
+		}
+	}
+
+	/**
+	 * Immutable token-to-listeners index. Listeners are referred to by their
+	 * position in the index's own entries, so the shared entries are never
+	 * modified.
+	 */
+	private static final class Index {
+		private static final int[] NONE = new int[0];
+
+		final int size;
+		final Entry[] entries;
+		final int[] all;
+		final IntIntHashMap slots;
+		final int[][] byToken;
+
+		Index(List<Entry> registered) {
+			size = registered.size();
+			entries = registered.toArray(new Entry[size]);
+			List<Integer> wildcard = new ArrayList<Integer>();
+			List<List<Integer>> groups = new ArrayList<List<Integer>>();
+			slots = new IntIntHashMap(size * 4, -1);
+			for (int i = 0; i < size; i++) {
+				Entry entry = entries[i];
+				if (entry.tokens.length == 0) {
+					wildcard.add(i);
+					continue;
+				}
+				for (int token : entry.tokens) {
+					int slot = slots.get(token);
+					if (slot < 0) {
+						slot = groups.size();
+						slots.put(token, slot);
+						groups.add(new ArrayList<Integer>());
+					}
+					List<Integer> group = groups.get(slot);
+					if (group.isEmpty() || group.get(group.size() - 1) != i) {
+						group.add(i);
+					}
+				}
+			}
+			all = toArray(wildcard);
+			byToken = new int[groups.size()][];
+			for (int i = 0; i < byToken.length; i++) {
+				byToken[i] = toArray(groups.get(i));
+			}
+		}
+
+		int[] lookup(int token) {
+			int slot = slots.get(token);
+			return slot < 0 ? NONE : byToken[slot];
+		}
+
+		private static int[] toArray(List<Integer> positions) {
+			int[] array = new int[positions.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = positions.get(i);
+			}
+			return array;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.angelbroking.smartapi.feed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * The last ticks of every token kept off heap, for lookback without garbage.
+ * 
+ * Each token owns a ring of fixed 64 byte records in direct buffers allocated
+ * up front, so the footprint is maxTokens * depth * 64 bytes however busy the
+ * feed is. Windows of a field are copied into caller-owned primitive arrays,
+ * oldest first.
+ * 
+ * Records hold
+ * 
+ * <pre>
+ * long time | double price | long quantity | long volume |
+ * double bid | double ask | long bid quantity | long ask quantity
+ * </pre>
+ * 
+ * where time is the exchange timestamp, or the receipt time for ticks without
+ * one, in epoch milliseconds.
+ */
+public class TickHistory implements OnTick, OnTicks, SmartWSOnTicks {
+
+	public static final int FIELD_TIME = 0;
+	public static final int FIELD_PRICE = 1;
+	public static final int FIELD_QUANTITY = 2;
+	public static final int FIELD_VOLUME = 3;
+	public static final int FIELD_BID = 4;
+	public static final int FIELD_ASK = 5;
+	public static final int FIELD_BID_QUANTITY = 6;
+	public static final int FIELD_ASK_QUANTITY = 7;
+
+	public static final int RECORD_SIZE = 64;
+
+	private static final int MAX_BUFFER_SIZE = 1 << 30;
+
+	private final int maxTokens;
+	private final int depth;
+	private final int tokensPerBuffer;
+	private final ByteBuffer[] buffers;
+	private final IntIntHashMap slots;
+	private final long[] counts;
+
+	/**
+	 * @param maxTokens is the largest number of tokens kept.
+	 * @param depth     is the number of ticks kept per token.
+	 */
+	public TickHistory(int maxTokens, int depth) {
+		long tokenSize = (long) depth * RECORD_SIZE;
+		if (depth <= 0 || tokenSize > MAX_BUFFER_SIZE) {
+			throw new IllegalArgumentException("depth must be between 1 and " + MAX_BUFFER_SIZE / RECORD_SIZE);
+		}
+		this.maxTokens = maxTokens;
+		this.depth = depth;
+		this.tokensPerBuffer = (int) (MAX_BUFFER_SIZE / tokenSize);
+		this.buffers = new ByteBuffer[(maxTokens + tokensPerBuffer - 1) / tokensPerBuffer];
+		for (int i = 0; i < buffers.length; i++) {
+			int tokens = Math.min(tokensPerBuffer, maxTokens - i * tokensPerBuffer);
+			buffers[i] = ByteBuffer.allocateDirect((int) (tokens * tokenSize)).order(ByteOrder.nativeOrder());
+		}
+		this.slots = new IntIntHashMap(maxTokens, -1);
+		this.counts = new long[maxTokens];
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		long time = tick.exchangeTimestamp > 0 ? tick.exchangeTimestamp : System.currentTimeMillis();
+		record(tick.token, time, tick.lastTradedPrice, tick.lastTradedQuantity, tick.volume, tick.bidPrice[0],
+				tick.askPrice[0], tick.bidQuantity[0], tick.askQuantity[0]);
+	}
+
+	/** Reads "tk", "ltp", "ltq" and "v" of JSON ticks, stamped with receipt time. */
+	@Override
+	public void onTicks(JSONArray ticks) {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < ticks.length(); i++) {
+			JSONObject tick = ticks.optJSONObject(i);
+			if (tick == null || !tick.has("tk") || !tick.has("ltp")) {
+				continue;
+			}
+			int token = tick.optInt("tk", 0);
+			double price = tick.optDouble("ltp", Double.NaN);
+			if (token == 0 || Double.isNaN(price)) {
+				continue;
+			}
+			record(token, now, price, tick.optLong("ltq", 0), tick.optLong("v", 0), 0, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Appends a tick to the history of a token, overwriting its oldest tick
+	 * once the ring is full.
+	 * 
+	 * @return false if the token is new and the history is full.
+	 */
+	public synchronized boolean record(int token, long time, double price, long quantity, long volume, double bid,
+			double ask, long bidQuantity, long askQuantity) {
+		int slot = slots.get(token);
+		if (slot < 0) {
+			if (slots.size() >= maxTokens) {
+				return false;
+			}
+			slot = slots.size();
+			slots.put(token, slot);
+		}
+		ByteBuffer buffer = buffers[slot / tokensPerBuffer];
+		int offset = offset(slot, (int) (counts[slot] % depth));
+		buffer.putLong(offset, time);
+		buffer.putDouble(offset + 8, price);
+		buffer.putLong(offset + 16, quantity);
+		buffer.putLong(offset + 24, volume);
+		buffer.putDouble(offset + 32, bid);
+		buffer.putDouble(offset + 40, ask);
+		buffer.putLong(offset + 48, bidQuantity);
+		buffer.putLong(offset + 56, askQuantity);
+		counts[slot]++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of ticks kept for a token.
+	 * 
+	 * @param token is the instrument token.
+	 * @return int
+	 */
+	public synchronized int size(int token) {
+		int slot = slots.get(token);
+		return slot < 0 ? 0 : (int) Math.min(counts[slot], depth);
+	}
+
+	/**
+	 * Returns the number of ticks ever recorded for a token.
+	 * 
+	 * @param token is the instrument token.
+	 * @return long
+	 */
+	public synchronized long getCount(int token) {
+		int slot = slots.get(token);
+		return slot < 0 ? 0 : counts[slot];
+	}
+
+	/**
+	 * Copies the latest values of a price field, oldest first.
+	 * 
+	 * @param token  is the instrument token.
+	 * @param field  is {@link #FIELD_PRICE}, {@link #FIELD_BID} or
+	 *               {@link #FIELD_ASK}.
+	 * @param window is the number of latest ticks wanted.
+	 * @param dst    receives the values from index 0.
+	 * @return the number of values copied, at most window and dst.length.
+	 */
+	public synchronized int read(int token, int field, int window, double[] dst) {
+		if (field != FIELD_PRICE && field != FIELD_BID && field != FIELD_ASK) {
+			throw new IllegalArgumentException("field " + field + " is not a price");
+		}
+		int slot = slots.get(token);
+		if (slot < 0) {
+			return 0;
+		}
+		ByteBuffer buffer = buffers[slot / tokensPerBuffer];
+		int count = count(slot, window, dst.length);
+		long first = counts[slot] - count;
+		for (int i = 0; i < count; i++) {
+			dst[i] = buffer.getDouble(offset(slot, (int) ((first + i) % depth)) + field * 8);
+		}
+		return count;
+	}
+
+	/**
+	 * Copies the latest values of a time or quantity field, oldest first.
+	 * 
+	 * @param token  is the instrument token.
+	 * @param field  is one of the fields other than prices.
+	 * @param window is the number of latest ticks wanted.
+	 * @param dst    receives the values from index 0.
+	 * @return the number of values copied, at most window and dst.length.
+	 */
+	public synchronized int read(int token, int field, int window, long[] dst) {
+		if (field < FIELD_TIME || field > FIELD_ASK_QUANTITY || field == FIELD_PRICE || field == FIELD_BID
+				|| field == FIELD_ASK) {
+			throw new IllegalArgumentException("field " + field + " is not a time or quantity");
+		}
+		int slot = slots.get(token);
+		if (slot < 0) {
+			return 0;
+		}
+		ByteBuffer buffer = buffers[slot / tokensPerBuffer];
+		int count = count(slot, window, dst.length);
+		long first = counts[slot] - count;
+		for (int i = 0; i < count; i++) {
+			dst[i] = buffer.getLong(offset(slot, (int) ((first + i) % depth)) + field * 8);
+		}
+		return count;
+	}
+
+	private int count(int slot, int window, int capacity) {
+		return (int) Math.min(Math.min(counts[slot], depth), Math.min(window, capacity));
+	}
+
+	private int offset(int slot, int index) {
+		return ((slot % tokensPerBuffer) * depth + index) * RECORD_SIZE;
+	}
+}
@@ -0,0 +1,326 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of feed frames backed by memory-mapped segment files.
+ * 
+ * {@link #append(byte, byte[])} only stamps the frame and hands it to a
+ * background writer through a bounded queue, so the socket reader thread is
+ * never blocked; frames are dropped and counted when the queue is full.
+ * 
+ * Segments are named ticks-yyyyMMdd-NNNN.jnl and roll over when full or when
+ * the trading day changes. Each segment starts with {@link #MAGIC} followed by
+ * records of
+ * 
+ * <pre>
+ * int length | int crc32 | long timestamp (epoch ms) | byte kind | payload
+ * </pre>
+ * 
+ * The length is written last, so a record interrupted by a crash reads as
+ * zero; reopening a journal scans today's last segment up to the first
+ * incomplete or corrupt record and continues from there.
+ */
+public class TickJournal implements Closeable {
+
+	/** Inflated JSON text of a text frame. */
+	public static final byte KIND_TEXT = 1;
+
+	/** Raw binary frame. */
+	public static final byte KIND_BINARY = 2;
+
+	public static final long MAGIC = 0x534d41525454434bL;
+	public static final int HEADER_SIZE = 8;
+	public static final int RECORD_HEADER_SIZE = 17;
+	public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+	public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+	private static final ZoneId EXCHANGE_ZONE = ZoneId.of("Asia/Kolkata");
+	private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final Entry POISON = new Entry(0, (byte) 0, new byte[0]);
+
+	private final File directory;
+	private final int segmentSize;
+	private final BlockingQueue<Entry> queue;
+	private final Thread writer;
+	private final CRC32 crc = new CRC32();
+	private final AtomicLong appended = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+
+	private RandomAccessFile file;
+	private MappedByteBuffer segment;
+	private LocalDate segmentDay;
+	private int segmentIndex;
+
+	/**
+	 * Opens a journal with default segment size and queue capacity.
+	 * 
+	 * @param directory is the directory holding the segment files.
+	 * @throws IOException if the directory or the last segment can't be opened.
+	 */
+	public TickJournal(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Opens a journal, recovering the tail of today's last segment if present.
+	 * 
+	 * @param directory     is the directory holding the segment files.
+	 * @param segmentSize   is the size of each segment file in bytes.
+	 * @param queueCapacity is the number of frames buffered for the writer.
+	 * @throws IOException if the directory or the last segment can't be opened.
+	 */
+	public TickJournal(File directory, int segmentSize, int queueCapacity) throws IOException {
+		if (segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("segmentSize too small");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't create journal directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.queue = new ArrayBlockingQueue<Entry>(queueCapacity);
+		recover(LocalDate.now(EXCHANGE_ZONE));
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "tick-journal-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queues a frame for writing. Never blocks; the frame is dropped if the
+	 * writer has fallen behind.
+	 * 
+	 * @param kind  is {@link #KIND_TEXT} or {@link #KIND_BINARY}.
+	 * @param frame is the frame; it is written later and must not be modified.
+	 * @return true if the frame was queued.
+	 */
+	public boolean append(byte kind, byte[] frame) {
+		if (closed || !queue.offer(new Entry(System.currentTimeMillis(), kind, frame))) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/** Returns the number of frames written. */
+	public long getAppendedCount() {
+		return appended.get();
+	}
+
+	/** Returns the number of frames dropped because the queue was full. */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the queued frames, flushes the current segment and stops the
+	 * writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			queue.put(POISON);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeSegment();
+	}
+
+	/**
+	 * Returns the segment files of a journal directory in write order.
+	 * 
+	 * @param directory is the journal directory.
+	 * @return segment files, empty if there are none.
+	 */
+	public static File[] segments(File directory) {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("ticks-") && name.endsWith(".jnl");
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Scans a segment and returns the offset after its last valid record.
+	 * 
+	 * @param buffer is the mapped segment.
+	 * @return end offset of the valid records.
+	 */
+	public static int validEnd(MappedByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+			return -1;
+		}
+		CRC32 crc = new CRC32();
+		int offset = HEADER_SIZE;
+		while (buffer.limit() - offset >= RECORD_HEADER_SIZE) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || length > buffer.limit() - offset - RECORD_HEADER_SIZE) {
+				break;
+			}
+			ByteBuffer payload = buffer.duplicate();
+			((Buffer) payload).limit(offset + RECORD_HEADER_SIZE + length);
+			((Buffer) payload).position(offset + RECORD_HEADER_SIZE);
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+				break;
+			}
+			offset += RECORD_HEADER_SIZE + length;
+		}
+		return offset;
+	}
+
+	private void drain() {
+		while (true) {
+			Entry entry;
+			try {
+				entry = queue.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (entry == POISON) {
+				return;
+			}
+			if (entry == null) {
+				continue;
+			}
+			try {
+				write(entry);
+				appended.incrementAndGet();
+			} catch (IOException e) {
+				dropped.incrementAndGet();
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void write(Entry entry) throws IOException {
+		int length = entry.frame.length;
+		if (length == 0) {
+			return;
+		}
+		if (length > segmentSize - HEADER_SIZE - RECORD_HEADER_SIZE) {
+			throw new IOException("frame of " + length + " bytes exceeds the segment size");
+		}
+		LocalDate day = Instant.ofEpochMilli(entry.timestamp).atZone(EXCHANGE_ZONE).toLocalDate();
+		if (!day.equals(segmentDay)) {
+			closeSegment();
+			segmentDay = day;
+			segmentIndex = 0;
+			openSegment(false);
+		} else if (segment.remaining() < RECORD_HEADER_SIZE + length) {
+			closeSegment();
+			segmentIndex++;
+			openSegment(false);
+		}
+
+		int offset = segment.position();
+		crc.reset();
+		crc.update(entry.frame, 0, length);
+		segment.putInt(offset + 4, (int) crc.getValue());
+		segment.putLong(offset + 8, entry.timestamp);
+		segment.put(offset + 16, entry.kind);
+		((Buffer) segment).position(offset + RECORD_HEADER_SIZE);
+		segment.put(entry.frame, 0, length);
+		segment.putInt(offset, length);
+	}
+
+	private void recover(LocalDate today) throws IOException {
+		segmentDay = today;
+		segmentIndex = 0;
+		String prefix = "ticks-" + DAY.format(today) + "-";
+		File last = null;
+		for (File candidate : segments(directory)) {
+			if (candidate.getName().startsWith(prefix)) {
+				last = candidate;
+			}
+		}
+		if (last == null) {
+			openSegment(false);
+			return;
+		}
+		segmentIndex = Integer.parseInt(last.getName().substring(prefix.length(), prefix.length() + 4));
+		openSegment(true);
+	}
+
+	private void openSegment(boolean existing) throws IOException {
+		File path = new File(directory,
+				String.format("ticks-%s-%04d.jnl", DAY.format(segmentDay), segmentIndex));
+		file = new RandomAccessFile(path, "rw");
+		if (file.length() < segmentSize) {
+			file.setLength(segmentSize);
+		}
+		segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		int end = existing ? validEnd(segment) : -1;
+		if (end < 0) {
+			segment.putLong(0, MAGIC);
+			end = HEADER_SIZE;
+		}
+		if (segment.limit() - end >= 4) {
+			// clear a torn record so readers stop here
+			segment.putInt(end, 0);
+		}
+		((Buffer) segment).position(end);
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+	private static final class Entry {
+		final long timestamp;
+		final byte kind;
+		final byte[] frame;
+
+		Entry(long timestamp, byte kind, byte[] frame) {
+			this.timestamp = timestamp;
+			this.kind = kind;
+			this.frame = frame;
+		}
+	}
+}
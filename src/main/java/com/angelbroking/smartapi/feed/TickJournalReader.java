@@ -0,0 +1,109 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of the records written by {@link TickJournal}.
+ * 
+ * Reads either a single segment file or every segment of a journal directory
+ * in write order. Each segment is read up to its last valid record.
+ */
+public class TickJournalReader implements Closeable {
+
+	private final File[] files;
+	private int fileIndex = -1;
+	private RandomAccessFile file;
+	private MappedByteBuffer segment;
+	private int end;
+	private int offset;
+
+	private long timestamp;
+	private byte kind;
+	private ByteBuffer payload;
+
+	/**
+	 * @param path is a journal directory or a single segment file.
+	 */
+	public TickJournalReader(File path) {
+		this.files = path.isDirectory() ? TickJournal.segments(path) : new File[] { path };
+	}
+
+	/**
+	 * Moves to the next record.
+	 * 
+	 * @return false when every segment has been read.
+	 * @throws IOException if a segment can't be read.
+	 */
+	public boolean next() throws IOException {
+		while (segment == null || offset >= end) {
+			if (!openNext()) {
+				return false;
+			}
+		}
+		int length = segment.getInt(offset);
+		timestamp = segment.getLong(offset + 8);
+		kind = segment.get(offset + 16);
+		ByteBuffer slice = segment.duplicate();
+		((Buffer) slice).limit(offset + TickJournal.RECORD_HEADER_SIZE + length);
+		((Buffer) slice).position(offset + TickJournal.RECORD_HEADER_SIZE);
+		payload = slice.slice().asReadOnlyBuffer();
+		offset += TickJournal.RECORD_HEADER_SIZE + length;
+		return true;
+	}
+
+	/** Returns the receipt time of the current record in epoch milliseconds. */
+	public long timestamp() {
+		return timestamp;
+	}
+
+	/** Returns {@link TickJournal#KIND_TEXT} or {@link TickJournal#KIND_BINARY}. */
+	public byte kind() {
+		return kind;
+	}
+
+	/** Returns the payload of the current record as a read-only view. */
+	public ByteBuffer payload() {
+		return payload.duplicate();
+	}
+
+	/** Returns the payload of the current record as a new array. */
+	public byte[] payloadBytes() {
+		ByteBuffer view = payload.duplicate();
+		byte[] bytes = new byte[view.remaining()];
+		view.get(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segment = null;
+		if (file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+	private boolean openNext() throws IOException {
+		close();
+		if (++fileIndex >= files.length) {
+			return false;
+		}
+		file = new RandomAccessFile(files[fileIndex], "r");
+		segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		end = TickJournal.validEnd(segment);
+		offset = TickJournal.HEADER_SIZE;
+		if (end < 0) {
+			end = 0;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,41 @@
+package com.angelbroking.smartapi.feed;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes the typed ticks of a feed to Reactive Streams subscribers.
+ * 
+ * Every subscriber receives its own copy of each tick, which it may keep or
+ * pass to asynchronous stages. Synchronous subscribers may let the copies be
+ * reused with {@link #setRecycling(boolean)}. Register it with
+ * setOnTickListener of a ticker or replayer.
+ */
+public class TickPublisher extends FeedPublisher<Tick> implements OnTick {
+
+	/**
+	 * @param bufferSize is the number of ticks buffered for each subscriber.
+	 * @param overflow   is applied when a buffer is full.
+	 */
+	public TickPublisher(int bufferSize, Overflow overflow) {
+		this(bufferSize, overflow, null);
+	}
+
+	/**
+	 * @param bufferSize is the number of ticks buffered for each subscriber.
+	 * @param overflow   is applied when a buffer is full.
+	 * @param executor   delivers the ticks, or null for a shared daemon pool.
+	 */
+	public TickPublisher(int bufferSize, Overflow overflow, Executor executor) {
+		super(bufferSize, overflow, executor, true);
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		publish(tick.token, tick);
+	}
+
+	@Override
+	protected Tick retain(Tick item, Tick spare) {
+		return (spare != null ? spare : new Tick()).copyFrom(item);
+	}
+}
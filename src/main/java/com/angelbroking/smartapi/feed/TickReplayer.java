@@ -0,0 +1,175 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONArray;
+
+import com.angelbroking.smartapi.smartTicker.SmartWSOnTicks;
+import com.angelbroking.smartapi.ticker.OnTicks;
+
+/**
+ * Replays a {@link TickJournal} recording through the same listener
+ * interfaces as the live tickers.
+ * 
+ * Text records are parsed into a JSONArray and passed to the OnTicks and
+ * SmartWSOnTicks listeners, binary records are decoded and passed to the
+ * OnTick listener. Records are paced by their recorded receipt time scaled by
+ * {@link #setSpeed(double)}, or sent back to back with {@link #AS_FAST_AS_POSSIBLE}.
+ */
+public class TickReplayer {
+
+	/** Speed which replays without any pacing. */
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	/** Speed which replays at the recorded pace. */
+	public static final double REAL_TIME = 1;
+
+	private final File path;
+	private final BinaryTickDecoder binaryTickDecoder = new BinaryTickDecoder();
+	private OnTicks onTicksListener;
+	private SmartWSOnTicks smartWSOnTicksListener;
+	private OnTick onTickListener;
+	private double speed = REAL_TIME;
+	private volatile boolean stopped;
+
+	private volatile long messages;
+	private volatile long ticks;
+	private volatile long startNanos;
+	private volatile long endNanos;
+
+	/**
+	 * @param path is a journal directory or a single segment file.
+	 */
+	public TickReplayer(File path) {
+		this.path = path;
+	}
+
+	public void setOnTickerArrivalListener(OnTicks listener) {
+		this.onTicksListener = listener;
+	}
+
+	public void setOnSmartWSTickerArrivalListener(SmartWSOnTicks listener) {
+		this.smartWSOnTicksListener = listener;
+	}
+
+	public void setOnTickListener(OnTick listener) {
+		this.onTickListener = listener;
+	}
+
+	/**
+	 * Sets the replay speed as a multiple of the recorded pace.
+	 * 
+	 * @param speed is 1 for real time, 10 for ten times faster, or
+	 *              {@link #AS_FAST_AS_POSSIBLE}.
+	 */
+	public void setSpeed(double speed) {
+		if (speed < 0) {
+			throw new IllegalArgumentException("speed must not be negative");
+		}
+		this.speed = speed;
+	}
+
+	/** Stops a replay running on another thread after the current record. */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Replays the recording on the calling thread.
+	 * 
+	 * @return statistics of the replay.
+	 * @throws IOException if the recording can't be read.
+	 */
+	public Stats replay() throws IOException {
+		stopped = false;
+		messages = 0;
+		ticks = 0;
+		startNanos = System.nanoTime();
+		endNanos = 0;
+		long firstTimestamp = -1;
+		TickJournalReader reader = new TickJournalReader(path);
+		try {
+			while (!stopped && reader.next()) {
+				if (speed > 0) {
+					if (firstTimestamp < 0) {
+						firstTimestamp = reader.timestamp();
+					}
+					long due = startNanos + (long) ((reader.timestamp() - firstTimestamp) * 1000000L / speed);
+					long wait;
+					while (!stopped && (wait = due - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(wait);
+					}
+				}
+				ticks += dispatch(reader.kind(), reader.payload());
+				messages++;
+			}
+		} finally {
+			endNanos = System.nanoTime();
+			reader.close();
+		}
+		return getStats();
+	}
+
+	/**
+	 * Returns the statistics so far; may be called while a replay is running.
+	 * 
+	 * @return Stats
+	 */
+	public Stats getStats() {
+		long end = endNanos != 0 ? endNanos : System.nanoTime();
+		return new Stats(messages, ticks, end - startNanos);
+	}
+
+	private int dispatch(byte kind, ByteBuffer payload) {
+		if (kind == TickJournal.KIND_BINARY) {
+			return binaryTickDecoder.decode(payload, onTickListener);
+		}
+		if (kind != TickJournal.KIND_TEXT) {
+			return 0;
+		}
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		JSONArray tickerData = new JSONArray(new String(bytes, StandardCharsets.UTF_8));
+		if (onTicksListener != null) {
+			onTicksListener.onTicks(tickerData);
+		}
+		if (smartWSOnTicksListener != null) {
+			smartWSOnTicksListener.onTicks(tickerData);
+		}
+		return tickerData.length();
+	}
+
+	/**
+	 * Messages and ticks dispatched by a replay.
+	 */
+	public static class Stats {
+		public final long messages;
+		public final long ticks;
+		public final long elapsedNanos;
+
+		public Stats(long messages, long ticks, long elapsedNanos) {
+			this.messages = messages;
+			this.ticks = ticks;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public double getMessagesPerSecond() {
+			return elapsedNanos > 0 ? messages * 1e9 / elapsedNanos : 0;
+		}
+
+		public double getTicksPerSecond() {
+			return elapsedNanos > 0 ? ticks * 1e9 / elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats [messages=" + messages + ", ticks=" + ticks + ", elapsedMillis=" + elapsedNanos / 1000000
+					+ ", messagesPerSecond=" + (long) getMessagesPerSecond() + ", ticksPerSecond="
+					+ (long) getTicksPerSecond() + "]";
+		}
+	}
+}
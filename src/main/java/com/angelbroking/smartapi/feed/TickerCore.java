@@ -0,0 +1,435 @@
+package com.angelbroking.smartapi.feed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+import org.json.JSONArray;
+
+/**
+ * Connection lifecycle and decode pipeline shared by SmartAPITicker and
+ * SmartWebsocket.
+ * 
+ * Text frames are Base64 decoded, inflated with a reused Inflater and parsed
+ * into a JSONArray; binary frames are decoded by {@link BinaryTickDecoder}.
+ * Both are recorded to the {@link TickJournal} when one is set. The wire
+ * protocol (handshake, subscriptions) stays with the ticker, which sends it
+ * from {@link Listener#onConnected()}.
+ * 
+ * Heartbeats and reconnect timers of every core run on one shared daemon
+ * thread. The reconnects themselves block through the handshake, so they run
+ * on a separate pool and a slow one holds up no other core.
+ * 
+ * Connects, disconnects and reconnects of a core are serialized, each
+ * advancing the connection generation under one lock, so a reconnect due
+ * after a disconnect sees it and gives up, and every socket gets its own
+ * generation.
+ */
+public class TickerCore {
+
+	/** Default delay before reconnecting a dropped connection. */
+	public static final long DEFAULT_RECONNECT_DELAY_MILLIS = 1000;
+
+	/**
+	 * Receives the events of a ticker core.
+	 */
+	public interface Listener {
+		void onConnected();
+
+		void onDisconnected();
+
+		void onTicks(JSONArray ticks);
+
+		void onError(Exception exception);
+	}
+
+	private static final ScheduledExecutorService SCHEDULER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "smartapi-ticker-scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static final ExecutorService CONNECTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "smartapi-ticker-connect-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final FeedTransport transport;
+	private final String uri;
+	private final Listener listener;
+	private final BinaryTickDecoder binaryTickDecoder = new BinaryTickDecoder();
+	private final Inflater inflater = new Inflater();
+	private byte[] inflated = new byte[16384];
+
+	private volatile OnTick onTickListener;
+	private volatile TickJournal tickJournal;
+	private volatile FeedLatencyStats latencyStats;
+	private long receiptMillis;
+	private long listenerNanos;
+	private volatile boolean autoReconnect;
+	private volatile long reconnectDelayMillis = DEFAULT_RECONNECT_DELAY_MILLIS;
+	private final Object connectLock = new Object();
+	// written under connectLock, read by the connection listeners
+	private volatile boolean closing;
+	private volatile int generation;
+	private String heartbeat;
+	private long heartbeatPeriodMillis;
+	private ScheduledFuture<?> heartbeatTask;
+
+	/**
+	 * @param transport carries the connection.
+	 * @param uri       is the feed uri.
+	 * @param listener  receives connection events and decoded JSON ticks.
+	 */
+	public TickerCore(FeedTransport transport, String uri, Listener listener) {
+		this.transport = transport;
+		this.uri = uri;
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets a text frame sent every period while connected, starting right
+	 * after the connection opens.
+	 * 
+	 * @param heartbeat    is the frame to send.
+	 * @param periodMillis is the interval between frames.
+	 */
+	public synchronized void setHeartbeat(String heartbeat, long periodMillis) {
+		this.heartbeat = heartbeat;
+		this.heartbeatPeriodMillis = periodMillis;
+	}
+
+	/**
+	 * Reconnects automatically after the connection drops.
+	 * 
+	 * @param autoReconnect true to reconnect.
+	 */
+	public void setAutoReconnect(boolean autoReconnect) {
+		this.autoReconnect = autoReconnect;
+	}
+
+	public void setReconnectDelayMillis(long reconnectDelayMillis) {
+		this.reconnectDelayMillis = reconnectDelayMillis;
+	}
+
+	public void setOnTickListener(OnTick onTickListener) {
+		this.onTickListener = onTickListener;
+	}
+
+	public void setTickJournal(TickJournal tickJournal) {
+		this.tickJournal = tickJournal;
+	}
+
+	/**
+	 * Times every frame on receipt, after decoding and after the listeners
+	 * have returned, and compares binary ticks with their exchange timestamp.
+	 * 
+	 * @param latencyStats receives the timings, or null to stop timing.
+	 */
+	public void setLatencyStats(FeedLatencyStats latencyStats) {
+		this.latencyStats = latencyStats;
+	}
+
+	public FeedLatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+	public FeedTransport getTransport() {
+		return transport;
+	}
+
+	/** Opens the connection. */
+	public void connect() {
+		synchronized (connectLock) {
+			closing = false;
+			open(++generation);
+		}
+	}
+
+	/** Closes the connection without reconnecting. */
+	public void disconnect() {
+		synchronized (connectLock) {
+			closing = true;
+			generation++;
+			cancelHeartbeat();
+			transport.disconnect();
+		}
+	}
+
+	/**
+	 * Drops the current connection and opens a new one, e.g. when the feed has
+	 * gone quiet although the socket is still open.
+	 */
+	public void reconnect() {
+		synchronized (connectLock) {
+			closing = false;
+			int next = ++generation;
+			cancelHeartbeat();
+			transport.disconnect();
+			open(next);
+		}
+	}
+
+	public boolean isOpen() {
+		return transport.isOpen();
+	}
+
+	/**
+	 * @return true if the text was sent on an open connection.
+	 */
+	public boolean sendText(String text) {
+		return transport.sendText(text);
+	}
+
+	/**
+	 * Transport listener returned for a connection; exposed so that callers
+	 * wiring a transport themselves can feed the core.
+	 * 
+	 * @return listener feeding this core.
+	 */
+	public FeedTransport.Listener newTransportListener() {
+		return new ConnectionListener(generation);
+	}
+
+	private void open(int connection) {
+		try {
+			transport.connect(uri, new ConnectionListener(connection));
+		} catch (IOException e) {
+			listener.onError(e);
+			scheduleReconnect(connection);
+		}
+	}
+
+	private void scheduleReconnect(final int connection) {
+		if (!autoReconnect || closing) {
+			return;
+		}
+		final Runnable reconnect = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (connectLock) {
+					if (connection == generation && !closing) {
+						open(++generation);
+					}
+				}
+			}
+		};
+		SCHEDULER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				CONNECTOR.execute(reconnect);
+			}
+		}, reconnectDelayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void startHeartbeat() {
+		cancelHeartbeat();
+		if (heartbeat == null || heartbeatPeriodMillis <= 0) {
+			return;
+		}
+		final String frame = heartbeat;
+		heartbeatTask = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				transport.sendText(frame);
+			}
+		}, 0, heartbeatPeriodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void cancelHeartbeat() {
+		if (heartbeatTask != null) {
+			heartbeatTask.cancel(false);
+			heartbeatTask = null;
+		}
+	}
+
+	/**
+	 * Decodes a Base64 encoded, zlib compressed text frame and records it.
+	 * 
+	 * @param message is the text frame.
+	 * @return the JSON ticks.
+	 */
+	public synchronized JSONArray decodeText(String message) throws DataFormatException {
+		byte[] decoded = Base64.getDecoder().decode(message);
+		inflater.reset();
+		inflater.setInput(decoded);
+		int length = 0;
+		while (!inflater.finished()) {
+			if (length == inflated.length) {
+				inflated = Arrays.copyOf(inflated, inflated.length * 2);
+			}
+			int n = inflater.inflate(inflated, length, inflated.length - length);
+			if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+				break;
+			}
+			length += n;
+		}
+		TickJournal journal = tickJournal;
+		if (journal != null) {
+			journal.append(TickJournal.KIND_TEXT, Arrays.copyOf(inflated, length));
+		}
+		return new JSONArray(new String(inflated, 0, length, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Records a binary frame and decodes its packets to the OnTick listener.
+	 * 
+	 * @param binary is the binary frame.
+	 * @return number of packets decoded.
+	 */
+	public int decodeBinary(byte[] binary) {
+		FeedLatencyStats stats = latencyStats;
+		long received = 0;
+		if (stats != null) {
+			received = System.nanoTime();
+			receiptMillis = System.currentTimeMillis();
+			listenerNanos = 0;
+		}
+		TickJournal journal = tickJournal;
+		if (journal != null) {
+			journal.append(TickJournal.KIND_BINARY, binary);
+		}
+		if (stats == null) {
+			return binaryTickDecoder.decode(ByteBuffer.wrap(binary), onTickListener);
+		}
+		int packets = binaryTickDecoder.decode(ByteBuffer.wrap(binary), timedTickListener);
+		long elapsed = System.nanoTime() - received;
+		stats.getDecode().record(elapsed - listenerNanos);
+		stats.getDispatch().record(listenerNanos);
+		stats.getTotal().record(elapsed);
+		return packets;
+	}
+
+	private final OnTick timedTickListener = new OnTick() {
+		@Override
+		public void onTick(Tick tick) {
+			FeedLatencyStats stats = latencyStats;
+			if (stats != null && tick.exchangeTimestamp > 0) {
+				stats.getNetwork().record((receiptMillis - tick.exchangeTimestamp) * 1000000L);
+			}
+			OnTick target = onTickListener;
+			if (target == null) {
+				return;
+			}
+			long start = System.nanoTime();
+			target.onTick(tick);
+			long spent = System.nanoTime() - start;
+			listenerNanos += spent;
+			if (stats != null) {
+				stats.listener("onTick").record(spent);
+			}
+		}
+	};
+
+	/**
+	 * Inflates zlib compressed bytes.
+	 * 
+	 * @param compressedTxt is the compressed data.
+	 * @return inflated data.
+	 */
+	public static byte[] decompress(byte[] compressedTxt) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (OutputStream ios = new InflaterOutputStream(os)) {
+			ios.write(compressedTxt);
+		}
+
+		return os.toByteArray();
+	}
+
+	private class ConnectionListener implements FeedTransport.Listener {
+
+		private final int connection;
+
+		ConnectionListener(int connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void onOpen() {
+			if (connection != generation) {
+				return;
+			}
+			listener.onConnected();
+			startHeartbeat();
+		}
+
+		@Override
+		public void onText(String text) {
+			if (connection != generation) {
+				return;
+			}
+			try {
+				FeedLatencyStats stats = latencyStats;
+				if (stats == null) {
+					listener.onTicks(decodeText(text));
+					return;
+				}
+				long received = System.nanoTime();
+				JSONArray ticks = decodeText(text);
+				long decoded = System.nanoTime();
+				listener.onTicks(ticks);
+				long done = System.nanoTime();
+				stats.getDecode().record(decoded - received);
+				stats.getDispatch().record(done - decoded);
+				stats.getTotal().record(done - received);
+				stats.listener("onTicks").record(done - decoded);
+			} catch (Exception e) {
+				listener.onError(e);
+			}
+		}
+
+		@Override
+		public void onBinary(byte[] binary) {
+			if (connection != generation) {
+				return;
+			}
+			try {
+				decodeBinary(binary);
+			} catch (Exception e) {
+				listener.onError(e);
+			}
+		}
+
+		@Override
+		public void onClose() {
+			if (connection != generation) {
+				return;
+			}
+			cancelHeartbeat();
+			listener.onDisconnected();
+			scheduleReconnect(connection);
+		}
+
+		@Override
+		public void onError(Exception exception) {
+			if (connection != generation) {
+				return;
+			}
+			listener.onError(exception);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.angelbroking.smartapi.gtt;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.http.SmartAPIResponseHandler;
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.angelbroking.smartapi.models.Gtt;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads GTT rule list responses straight from the response body into
+ * {@link Gtt} objects, without building the body as a String or the rules as
+ * JSON objects.
+ * 
+ * <pre>
+ * {"status":true,"message":"SUCCESS","errorcode":"","data":[{"id":...,"tradingsymbol":...,"status":"NEW",...},...]}
+ * </pre>
+ */
+public class GttParser {
+
+	private static final Gson GSON = new Gson();
+
+	private GttParser() {
+	}
+
+	/**
+	 * Reads a response, appending its rules to a list.
+	 * 
+	 * @param body  is the response body.
+	 * @param rules receives the rules.
+	 * @return the number of rules read.
+	 * @throws IOException       if the body is not a rule list response.
+	 * @throws SmartAPIException if the response is an error.
+	 */
+	public static int read(Reader body, List<Gtt> rules) throws IOException, SmartAPIException {
+		JsonReader reader = new JsonReader(body);
+		boolean status = true;
+		String message = "";
+		String errorCode = "";
+		int count = 0;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("status".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+				status = reader.nextBoolean();
+			} else if ("message".equals(name) && reader.peek() == JsonToken.STRING) {
+				message = reader.nextString();
+			} else if ("errorcode".equals(name) && reader.peek() == JsonToken.STRING) {
+				errorCode = reader.nextString();
+			} else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				count = readRules(reader, rules);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (!status || !errorCode.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", message);
+			throw new SmartAPIResponseHandler().exception(error, errorCode);
+		}
+		return count;
+	}
+
+	private static int readRules(JsonReader reader, List<Gtt> rules) throws IOException {
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			try {
+				rules.add(GSON.<Gtt>fromJson(reader, Gtt.class));
+			} catch (JsonParseException e) {
+				throw new IOException("Unreadable GTT rule", e);
+			}
+			count++;
+		}
+		reader.endArray();
+		return count;
+	}
+}
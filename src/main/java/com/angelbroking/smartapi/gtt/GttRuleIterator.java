@@ -0,0 +1,230 @@
+package com.angelbroking.smartapi.gtt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.angelbroking.smartapi.models.Gtt;
+import com.angelbroking.smartapi.utils.RateLimiter;
+
+/**
+ * Iterates over every GTT rule matching a status filter, fetching the pages
+ * of the rule list a few at a time ahead of the consumer so that it rarely
+ * waits on a request.
+ * 
+ * Pages are returned in order. The first page shorter than the page size
+ * ends the list and no further pages are requested; the few requested
+ * beyond it come back empty and are discarded. Closing the iterator, e.g. by
+ * leaving a try-with-resources block early, cancels the pages in flight.
+ * 
+ * <pre>
+ * try (GttRuleIterator rules = smartConnect.gttRules(Arrays.asList("NEW", "ACTIVE"))) {
+ *     while (rules.hasNext()) {
+ *         Gtt rule = rules.next();
+ *     }
+ * }
+ * </pre>
+ * 
+ * A failed page ends the iteration with a {@link FetchException} carrying the
+ * IOException or SmartAPIException. The iterator is meant for one consumer
+ * thread.
+ */
+public class GttRuleIterator implements Iterator<Gtt>, Closeable {
+
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	/** Pages requested ahead of the consumer. */
+	public static final int DEFAULT_PREFETCH = 3;
+
+	/** Fetches one page of the rule list. */
+	public interface PageFetcher {
+		List<Gtt> fetch(List<String> status, int page, int count) throws IOException, SmartAPIException;
+	}
+
+	private final PageFetcher fetcher;
+	private final List<String> status;
+	private final int pageSize;
+	private final int prefetch;
+	private RateLimiter rateLimiter;
+	private ThreadPoolExecutor executor;
+	private final ArrayDeque<Future<List<Gtt>>> pending = new ArrayDeque<Future<List<Gtt>>>();
+	private int nextPage = 1;
+	private boolean lastPage;
+	private List<Gtt> current = Collections.emptyList();
+	private int position;
+	private boolean closed;
+
+	public GttRuleIterator(PageFetcher fetcher, List<String> status) {
+		this(fetcher, status, DEFAULT_PAGE_SIZE, DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * @param fetcher  fetches a page.
+	 * @param status   is the list of rule statuses to match, e.g. "NEW".
+	 * @param pageSize is the number of rules per page.
+	 * @param prefetch is the number of pages requested at once.
+	 */
+	public GttRuleIterator(PageFetcher fetcher, List<String> status, int pageSize, int prefetch) {
+		if (pageSize <= 0 || prefetch <= 0) {
+			throw new IllegalArgumentException("pageSize and prefetch must be positive");
+		}
+		this.fetcher = fetcher;
+		this.status = status;
+		this.pageSize = pageSize;
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * Spaces the page requests, e.g. with a limiter shared with other calls of
+	 * the same session. Set before the first call to hasNext.
+	 * 
+	 * @param rateLimiter is null by default.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (position >= current.size()) {
+			if (closed) {
+				return false;
+			}
+			if (lastPage) {
+				close();
+				return false;
+			}
+			fill();
+			List<Gtt> page = take(pending.poll());
+			if (page.size() < pageSize) {
+				lastPage = true;
+				cancelPending();
+			}
+			current = page;
+			position = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public Gtt next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.get(position++);
+	}
+
+	/**
+	 * Returns the remaining rules as a sequential stream, which closes the
+	 * iterator when closed.
+	 * 
+	 * @return Stream of rules in list order.
+	 */
+	public Stream<Gtt> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(new Runnable() {
+					@Override
+					public void run() {
+						close();
+					}
+				});
+	}
+
+	/** Cancels the pages in flight and stops the fetch threads. */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		current = Collections.emptyList();
+		cancelPending();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void fill() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(prefetch, prefetch, 10, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "smartapi-gtt-rules-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			// an iterator abandoned without close leaves no threads behind
+			executor.allowCoreThreadTimeOut(true);
+		}
+		while (!lastPage && pending.size() < prefetch) {
+			final int page = nextPage++;
+			pending.add(executor.submit(new Callable<List<Gtt>>() {
+				@Override
+				public List<Gtt> call() throws Exception {
+					if (rateLimiter != null) {
+						rateLimiter.acquire();
+					}
+					try {
+						return fetcher.fetch(status, page, pageSize);
+					} catch (SmartAPIException e) {
+						throw new FetchException(e);
+					}
+				}
+			}));
+		}
+	}
+
+	private List<Gtt> take(Future<List<Gtt>> result) {
+		try {
+			List<Gtt> page = result.get();
+			return page != null ? page : Collections.<Gtt>emptyList();
+		} catch (InterruptedException e) {
+			close();
+			Thread.currentThread().interrupt();
+			throw new FetchException(new IOException("interrupted while fetching GTT rules", e));
+		} catch (ExecutionException e) {
+			close();
+			Throwable cause = e.getCause();
+			throw cause instanceof FetchException ? (FetchException) cause : new FetchException(cause);
+		}
+	}
+
+	private void cancelPending() {
+		for (Future<List<Gtt>> result : pending) {
+			result.cancel(true);
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Thrown by hasNext and next when a page fails; the cause is the
+	 * IOException or SmartAPIException of the request.
+	 */
+	@SuppressWarnings("serial")
+	public static class FetchException extends RuntimeException {
+		public FetchException(Throwable cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package com.angelbroking.smartapi.historical;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.angelbroking.smartapi.utils.RateLimiter;
+
+/**
+ * Downloads the candles of many instruments over a date range, e.g. a
+ * nightly refresh of the F&amp;O universe.
+ * 
+ * The range of every instrument is split into request-sized chunks which a
+ * bounded pool fetches within the shared rate limit. Each chunk is handed to
+ * the sink and then its range is recorded in a checkpoint file, so a run
+ * interrupted for any reason resumes with the chunks not yet covered, even
+ * when the next run asks for a later or shifted range. Chunks reaching into
+ * the current exchange day are still forming and are never recorded. Failed
+ * chunks are retried a few times, then reported to the failure listener and
+ * in the progress, and left for the next run.
+ */
+public class BulkCandleDownloader {
+
+	public static final int DEFAULT_RETRIES = 3;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+	public static final long DEFAULT_PROGRESS_PERIOD_MILLIS = 5000;
+
+	private static final ZoneId EXCHANGE_ZONE = ZoneId.of("Asia/Kolkata");
+
+	/** Receives the candles of each chunk, from several threads at once. */
+	public interface OnCandles {
+		void onCandles(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+				CandleSeries series) throws IOException;
+	}
+
+	/** Receives the chunks that failed after every retry. */
+	public interface OnFailure {
+		void onFailure(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+				Throwable cause);
+	}
+
+	/** Receives progress reports. */
+	public interface OnProgress {
+		void onProgress(Progress progress);
+	}
+
+	/** Snapshot of the progress of a run. */
+	public static class Progress {
+		public int totalChunks;
+		public int skippedChunks;
+		public int completedChunks;
+		public int failedChunks;
+		public long candles;
+		public long elapsedMillis;
+		public double chunksPerSecond;
+		public double candlesPerSecond;
+		/** Estimated time to completion, or -1 before the first chunk. */
+		public long etaMillis;
+		/** Keys of the failed chunks, e.g. "NFO|35001|ONE_MINUTE|from|to". */
+		public List<String> failedChunkKeys;
+
+		@Override
+		public String toString() {
+			return "Progress [chunks=" + (skippedChunks + completedChunks + failedChunks) + "/" + totalChunks
+					+ ", skipped=" + skippedChunks + ", failed=" + failedChunks + ", candles=" + candles
+					+ ", chunks/s=" + String.format("%.2f", chunksPerSecond) + ", candles/s="
+					+ String.format("%.0f", candlesPerSecond) + ", eta=" + (etaMillis < 0 ? "?" : etaMillis / 1000 + "s")
+					+ "]";
+		}
+	}
+
+	private final CandleDownloader.ChunkFetcher fetcher;
+	private final RateLimiter rateLimiter;
+	private final int workers;
+	private final File checkpoint;
+	private final List<String[]> instruments = new ArrayList<String[]>();
+	private int retries = DEFAULT_RETRIES;
+	private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+	private long progressPeriodMillis = DEFAULT_PROGRESS_PERIOD_MILLIS;
+	private OnProgress onProgressListener;
+	private OnFailure onFailureListener;
+
+	/**
+	 * @param fetcher     fetches a chunk, e.g. SmartConnect.fetchCandles.
+	 * @param rateLimiter spaces the requests of all workers.
+	 * @param workers     is the number of chunks fetched at once.
+	 * @param checkpoint  records the chunks done, or null to not resume.
+	 */
+	public BulkCandleDownloader(CandleDownloader.ChunkFetcher fetcher, RateLimiter rateLimiter, int workers,
+			File checkpoint) {
+		this.fetcher = fetcher;
+		this.rateLimiter = rateLimiter;
+		this.workers = workers;
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Adds an instrument to download.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NFO".
+	 * @param symbolToken is the instrument token.
+	 */
+	public void add(String exchange, String symbolToken) {
+		instruments.add(new String[] { exchange, symbolToken });
+	}
+
+	public void setRetries(int retries, long retryDelayMillis) {
+		this.retries = retries;
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	/**
+	 * Set listener for progress reports.
+	 * 
+	 * @param onProgressListener receives a report at most every period and at
+	 *                           the end of the run.
+	 * @param periodMillis       is the time between reports.
+	 */
+	public void setOnProgressListener(OnProgress onProgressListener, long periodMillis) {
+		this.onProgressListener = onProgressListener;
+		this.progressPeriodMillis = periodMillis;
+	}
+
+	/**
+	 * Set listener for chunks that failed after every retry.
+	 * 
+	 * @param onFailureListener receives the chunk and the last error.
+	 */
+	public void setOnFailureListener(OnFailure onFailureListener) {
+		this.onFailureListener = onFailureListener;
+	}
+
+	/**
+	 * Downloads every instrument added into a candle store.
+	 * 
+	 * @param store    receives the candles.
+	 * @param interval is the candle interval.
+	 * @param from     is the start of the range in epoch milliseconds.
+	 * @param to       is the end of the range in epoch milliseconds.
+	 * @return the progress at the end of the run.
+	 * @throws IOException if the checkpoint can't be read or written.
+	 */
+	public Progress run(final CandleStore store, CandleInterval interval, long from, long to) throws IOException {
+		return run(new OnCandles() {
+			@Override
+			public void onCandles(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+					CandleSeries series) throws IOException {
+				store.put(exchange, symbolToken, interval, from, to, series);
+			}
+		}, interval, from, to);
+	}
+
+	/**
+	 * Downloads every instrument added, blocking until all chunks are done or
+	 * have failed.
+	 * 
+	 * @param sink     receives the candles of each chunk.
+	 * @param interval is the candle interval.
+	 * @param from     is the start of the range in epoch milliseconds.
+	 * @param to       is the end of the range in epoch milliseconds.
+	 * @return the progress at the end of the run.
+	 * @throws IOException if the checkpoint can't be read or written.
+	 */
+	public Progress run(final OnCandles sink, final CandleInterval interval, long from, long to) throws IOException {
+		Map<String, List<long[]>> done = readCheckpoint();
+		List<long[]> chunks = CandleDownloader.plan(interval, from, to);
+		final long today = LocalDate.now(EXCHANGE_ZONE).atStartOfDay(EXCHANGE_ZONE).toInstant().toEpochMilli();
+		final Run run = new Run(instruments.size() * chunks.size());
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "smartapi-bulk-downloader-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try (final Writer writer = checkpoint == null ? null
+				: new OutputStreamWriter(new FileOutputStream(checkpoint, true), StandardCharsets.UTF_8)) {
+			for (final String[] instrument : instruments) {
+				List<long[]> covered = done.get(key(instrument[0], instrument[1], interval));
+				for (final long[] chunk : chunks) {
+					if (covers(covered, chunk[0], chunk[1])) {
+						run.skipped.incrementAndGet();
+						continue;
+					}
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								CandleSeries series = fetch(instrument[0], instrument[1], interval, chunk[0], chunk[1]);
+								sink.onCandles(instrument[0], instrument[1], interval, chunk[0], chunk[1], series);
+								if (chunk[1] < today) {
+									record(writer, key(instrument[0], instrument[1], interval) + "|" + chunk[0] + "|"
+											+ chunk[1]);
+								}
+								run.completed.incrementAndGet();
+								run.candles.addAndGet(series.size());
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								fail(run, instrument, interval, chunk, e);
+							} catch (IOException | SmartAPIException e) {
+								fail(run, instrument, interval, chunk, e);
+							}
+							report(run, false);
+						}
+					});
+				}
+			}
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(progressPeriodMillis, TimeUnit.MILLISECONDS)) {
+					report(run, false);
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				// the workers still record chunks, so keep the checkpoint open until they stop
+				try {
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException again) {
+					e.addSuppressed(again);
+				}
+				Thread.currentThread().interrupt();
+			}
+		}
+		return report(run, true);
+	}
+
+	private CandleSeries fetch(String exchange, String symbolToken, CandleInterval interval, long from, long to)
+			throws IOException, SmartAPIException, InterruptedException {
+		for (int attempt = 0;; attempt++) {
+			try {
+				rateLimiter.acquire();
+				CandleSeries series = new CandleSeries();
+				fetcher.fetch(exchange, symbolToken, interval, from, to, series);
+				return series;
+			} catch (IOException | SmartAPIException e) {
+				if (attempt >= retries) {
+					throw e;
+				}
+				Thread.sleep(retryDelayMillis << attempt);
+			}
+		}
+	}
+
+	private void fail(Run run, String[] instrument, CandleInterval interval, long[] chunk, Throwable cause) {
+		run.failed.incrementAndGet();
+		synchronized (run) {
+			run.failedKeys.add(key(instrument[0], instrument[1], interval) + "|" + chunk[0] + "|" + chunk[1]);
+		}
+		OnFailure listener = onFailureListener;
+		if (listener != null) {
+			listener.onFailure(instrument[0], instrument[1], interval, chunk[0], chunk[1], cause);
+		}
+	}
+
+	/**
+	 * Reads the recorded chunk ranges of each instrument, merged where they
+	 * touch.
+	 */
+	private Map<String, List<long[]>> readCheckpoint() throws IOException {
+		Map<String, List<long[]>> done = new HashMap<String, List<long[]>>();
+		if (checkpoint == null || !checkpoint.exists()) {
+			return done;
+		}
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int end = line.lastIndexOf('|');
+				int start = end > 0 ? line.lastIndexOf('|', end - 1) : -1;
+				if (start <= 0) {
+					continue;
+				}
+				try {
+					long[] range = { Long.parseLong(line.substring(start + 1, end)),
+							Long.parseLong(line.substring(end + 1)) };
+					String key = line.substring(0, start);
+					List<long[]> ranges = done.get(key);
+					if (ranges == null) {
+						ranges = new ArrayList<long[]>();
+						done.put(key, ranges);
+					}
+					ranges.add(range);
+				} catch (NumberFormatException e) {
+					// a line cut short by a crash
+				}
+			}
+		}
+		for (List<long[]> ranges : done.values()) {
+			merge(ranges);
+		}
+		return done;
+	}
+
+	private static void merge(List<long[]> ranges) {
+		Collections.sort(ranges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+		List<long[]> merged = new ArrayList<long[]>(ranges.size());
+		for (long[] range : ranges) {
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			// chunks end one request resolution before the next one starts
+			if (last != null && range[0] <= last[1] + CandleDownloader.REQUEST_RESOLUTION_MILLIS) {
+				last[1] = Math.max(last[1], range[1]);
+			} else {
+				merged.add(range.clone());
+			}
+		}
+		ranges.clear();
+		ranges.addAll(merged);
+	}
+
+	private static boolean covers(List<long[]> ranges, long from, long to) {
+		if (ranges != null) {
+			for (long[] range : ranges) {
+				if (range[0] <= from && to <= range[1]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void record(Writer writer, String line) throws IOException {
+		if (writer == null) {
+			return;
+		}
+		synchronized (writer) {
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	private static String key(String exchange, String symbolToken, CandleInterval interval) {
+		return exchange + "|" + symbolToken + "|" + interval.name();
+	}
+
+	private Progress report(Run run, boolean last) {
+		long now = System.nanoTime();
+		synchronized (run) {
+			if (!last && now - run.lastReport < TimeUnit.MILLISECONDS.toNanos(progressPeriodMillis)) {
+				return null;
+			}
+			run.lastReport = now;
+		}
+		Progress progress = new Progress();
+		progress.totalChunks = run.total;
+		progress.skippedChunks = run.skipped.get();
+		progress.completedChunks = run.completed.get();
+		progress.failedChunks = run.failed.get();
+		progress.candles = run.candles.get();
+		synchronized (run) {
+			progress.failedChunkKeys = new ArrayList<String>(run.failedKeys);
+		}
+		progress.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - run.start);
+		double seconds = progress.elapsedMillis / 1000.0;
+		int processed = progress.completedChunks + progress.failedChunks;
+		progress.chunksPerSecond = seconds > 0 ? processed / seconds : 0;
+		progress.candlesPerSecond = seconds > 0 ? progress.candles / seconds : 0;
+		int remaining = progress.totalChunks - progress.skippedChunks - processed;
+		progress.etaMillis = progress.chunksPerSecond > 0 ? (long) (remaining / progress.chunksPerSecond * 1000)
+				: remaining == 0 ? 0 : -1;
+		OnProgress listener = onProgressListener;
+		if (listener != null) {
+			listener.onProgress(progress);
+		}
+		return progress;
+	}
+
+	private static class Run {
+		final int total;
+		final long start = System.nanoTime();
+		final AtomicInteger skipped = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicLong candles = new AtomicLong();
+		final List<String> failedKeys = new ArrayList<String>();
+		long lastReport = start;
+
+		Run(int total) {
+			this.total = total;
+		}
+	}
+}
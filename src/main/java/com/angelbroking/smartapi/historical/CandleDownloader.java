@@ -0,0 +1,162 @@
+package com.angelbroking.smartapi.historical;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.angelbroking.smartapi.utils.RateLimiter;
+
+/**
+ * Downloads candles over any range by splitting it into chunks within the
+ * interval's request limit and fetching the chunks concurrently, spaced by a
+ * shared rate limiter. The chunks are merged into one series ordered by time.
+ */
+public class CandleDownloader {
+
+	/** Requests per second allowed by the historical data API. */
+	public static final double DEFAULT_REQUESTS_PER_SECOND = 3;
+	public static final int DEFAULT_PARALLELISM = 3;
+
+	static final long REQUEST_RESOLUTION_MILLIS = 60000L;
+
+	/** Fetches the candles of one chunk. */
+	public interface ChunkFetcher {
+		void fetch(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+				CandleSeries into) throws IOException, SmartAPIException;
+	}
+
+	private final ChunkFetcher fetcher;
+	private final RateLimiter rateLimiter;
+	private final ExecutorService executor;
+
+	public CandleDownloader(ChunkFetcher fetcher) {
+		this(fetcher, new RateLimiter(DEFAULT_REQUESTS_PER_SECOND), DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param fetcher     fetches a chunk.
+	 * @param rateLimiter spaces the requests, shared with other downloaders
+	 *                    using the same session.
+	 * @param parallelism is the number of chunks fetched at once.
+	 */
+	public CandleDownloader(ChunkFetcher fetcher, RateLimiter rateLimiter, int parallelism) {
+		this.fetcher = fetcher;
+		this.rateLimiter = rateLimiter;
+		this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "smartapi-candle-downloader-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Splits a range into chunks each within one request's limit. Each chunk
+	 * ends one minute, the resolution of request times, before the next
+	 * starts, so no candle falls between two chunks wherever the range starts
+	 * relative to the candle grid.
+	 * 
+	 * @param interval is the candle interval.
+	 * @param from     is the start of the range in epoch milliseconds.
+	 * @param to       is the end of the range in epoch milliseconds.
+	 * @return pairs of chunk start and end, in order.
+	 */
+	public static List<long[]> plan(CandleInterval interval, long from, long to) {
+		List<long[]> chunks = new ArrayList<long[]>();
+		long step = interval.getMaxRangeMillis();
+		for (long start = from; start <= to; start += step) {
+			chunks.add(new long[] { start, Math.min(start + step - REQUEST_RESOLUTION_MILLIS, to) });
+		}
+		return chunks;
+	}
+
+	/**
+	 * Downloads the candles of a range.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range in epoch milliseconds.
+	 * @param to          is the end of the range in epoch milliseconds.
+	 * @return CandleSeries ordered by time without duplicates.
+	 * @throws IOException       is thrown when there is a connection related error.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public CandleSeries download(final String exchange, final String symbolToken, final CandleInterval interval,
+			long from, long to) throws IOException, SmartAPIException {
+		List<long[]> chunks = plan(interval, from, to);
+		List<Future<CandleSeries>> results = new ArrayList<Future<CandleSeries>>(chunks.size());
+		for (final long[] chunk : chunks) {
+			results.add(executor.submit(new Callable<CandleSeries>() {
+				@Override
+				public CandleSeries call() throws Exception {
+					rateLimiter.acquire();
+					CandleSeries series = new CandleSeries();
+					try {
+						fetcher.fetch(exchange, symbolToken, interval, chunk[0], chunk[1], series);
+					} catch (SmartAPIException e) {
+						throw new ChunkException(e);
+					}
+					return series;
+				}
+			}));
+		}
+		CandleSeries merged = new CandleSeries();
+		try {
+			for (Future<CandleSeries> result : results) {
+				merged.addAll(result.get());
+			}
+		} catch (InterruptedException e) {
+			cancel(results);
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while downloading candles", e);
+		} catch (ExecutionException e) {
+			cancel(results);
+			Throwable cause = e.getCause();
+			if (cause instanceof ChunkException) {
+				throw ((ChunkException) cause).smartAPIException;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+		merged.sortAndDeduplicate();
+		merged.trimToSize();
+		return merged;
+	}
+
+	/** Stops the download threads. */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static void cancel(List<Future<CandleSeries>> results) {
+		for (Future<CandleSeries> result : results) {
+			result.cancel(true);
+		}
+	}
+
+	/** Carries a SmartAPIException, which is not an Exception, out of a task. */
+	@SuppressWarnings("serial")
+	private static class ChunkException extends Exception {
+		final SmartAPIException smartAPIException;
+
+		ChunkException(SmartAPIException smartAPIException) {
+			this.smartAPIException = smartAPIException;
+		}
+	}
+}
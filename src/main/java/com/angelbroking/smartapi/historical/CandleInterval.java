@@ -0,0 +1,42 @@
+package com.angelbroking.smartapi.historical;
+
+/**
+ * Candle intervals of the historical data API, with the longest range one
+ * request may span.
+ */
+public enum CandleInterval {
+
+	ONE_MINUTE(60000L, 30),
+	THREE_MINUTE(180000L, 60),
+	FIVE_MINUTE(300000L, 100),
+	TEN_MINUTE(600000L, 100),
+	FIFTEEN_MINUTE(900000L, 200),
+	THIRTY_MINUTE(1800000L, 200),
+	ONE_HOUR(3600000L, 400),
+	ONE_DAY(86400000L, 2000);
+
+	private static final long DAY_MILLIS = 86400000L;
+
+	private final long millis;
+	private final int maxDaysPerRequest;
+
+	CandleInterval(long millis, int maxDaysPerRequest) {
+		this.millis = millis;
+		this.maxDaysPerRequest = maxDaysPerRequest;
+	}
+
+	/** Returns the length of a candle in milliseconds. */
+	public long getMillis() {
+		return millis;
+	}
+
+	/** Returns the longest range of one request in days. */
+	public int getMaxDaysPerRequest() {
+		return maxDaysPerRequest;
+	}
+
+	/** Returns the longest range of one request in milliseconds. */
+	public long getMaxRangeMillis() {
+		return maxDaysPerRequest * DAY_MILLIS;
+	}
+}
@@ -0,0 +1,106 @@
+package com.angelbroking.smartapi.historical;
+
+/**
+ * One field of many instruments aligned on a common time index, held in a
+ * single row-major matrix: the value of column c at row r is at
+ * {@code r * columns() + c}, so each row is a contiguous cross-section.
+ * 
+ * Cells where a column had no candle are flagged as gaps; they hold the
+ * forward-filled value, or NaN when the panel was built without filling or
+ * before the column's first candle.
+ */
+public class CandlePanel {
+
+	/** The candle field a panel holds. */
+	public enum Field {
+		OPEN, HIGH, LOW, CLOSE, VOLUME,
+		/** Simple return of the close since the previous candle of the column. */
+		RETURN
+	}
+
+	private final Field field;
+	private final String[] names;
+	private final long[] time;
+	private final double[] values;
+	private final boolean[] gaps;
+
+	CandlePanel(Field field, String[] names, long[] time, double[] values, boolean[] gaps) {
+		this.field = field;
+		this.names = names;
+		this.time = time;
+		this.values = values;
+		this.gaps = gaps;
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	public int rows() {
+		return time.length;
+	}
+
+	public int columns() {
+		return names.length;
+	}
+
+	/** Returns the name of a column. */
+	public String getName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * Returns the index of a column.
+	 * 
+	 * @param name is the name the series was added under.
+	 * @return the index, or -1 if absent.
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns the common time index, candle starts in epoch milliseconds. */
+	public long[] getTime() {
+		return time;
+	}
+
+	/** Returns the backing row-major matrix. */
+	public double[] getValues() {
+		return values;
+	}
+
+	/** Returns the backing row-major gap flags. */
+	public boolean[] getGaps() {
+		return gaps;
+	}
+
+	public double get(int row, int column) {
+		return values[row * names.length + column];
+	}
+
+	public boolean isGap(int row, int column) {
+		return gaps[row * names.length + column];
+	}
+
+	/**
+	 * Copies one column out of the matrix.
+	 * 
+	 * @param column is the column index.
+	 * @param dst    receives rows() values.
+	 */
+	public void getColumn(int column, double[] dst) {
+		for (int row = 0, i = column; row < time.length; row++, i += names.length) {
+			dst[row] = values[i];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CandlePanel [field=" + field + ", rows=" + time.length + ", columns=" + names.length + "]";
+	}
+}
@@ -0,0 +1,155 @@
+package com.angelbroking.smartapi.historical;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import org.json.JSONObject;
+
+import com.angelbroking.smartapi.http.SmartAPIResponseHandler;
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads historical data responses straight from the response body into a
+ * {@link CandleSeries}, without building the body as a String or the candles
+ * as JSON objects.
+ * 
+ * <pre>
+ * {"status":true,"message":"SUCCESS","errorcode":"","data":[["2021-03-08T09:15:00+05:30",o,h,l,c,v],...]}
+ * </pre>
+ */
+public class CandleParser {
+
+	private static final ZoneId EXCHANGE_ZONE = ZoneId.of("Asia/Kolkata");
+	private static final DateTimeFormatter REQUEST_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+	private CandleParser() {
+	}
+
+	/**
+	 * Reads a response, appending its candles to a series.
+	 * 
+	 * @param body   is the response body.
+	 * @param series receives the candles.
+	 * @return the number of candles read.
+	 * @throws IOException       if the body is not a candle response.
+	 * @throws SmartAPIException if the response is an error.
+	 */
+	public static int read(Reader body, CandleSeries series) throws IOException, SmartAPIException {
+		JsonReader reader = new JsonReader(body);
+		boolean status = true;
+		String message = "";
+		String errorCode = "";
+		int count = 0;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("status".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+				status = reader.nextBoolean();
+			} else if ("message".equals(name) && reader.peek() == JsonToken.STRING) {
+				message = reader.nextString();
+			} else if ("errorcode".equals(name) && reader.peek() == JsonToken.STRING) {
+				errorCode = reader.nextString();
+			} else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				count = readCandles(reader, series);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (!status || !errorCode.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", message);
+			throw new SmartAPIResponseHandler().exception(error, errorCode);
+		}
+		return count;
+	}
+
+	private static int readCandles(JsonReader reader, CandleSeries series) throws IOException {
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.beginArray();
+			long time = parseTimestamp(reader.nextString());
+			double open = reader.nextDouble();
+			double high = reader.nextDouble();
+			double low = reader.nextDouble();
+			double close = reader.nextDouble();
+			long volume = reader.hasNext() ? reader.nextLong() : 0;
+			while (reader.hasNext()) {
+				reader.skipValue();
+			}
+			reader.endArray();
+			series.add(time, open, high, low, close, volume);
+			count++;
+		}
+		reader.endArray();
+		return count;
+	}
+
+	/**
+	 * Parses a timestamp of the form 2021-03-08T09:15:00+05:30 without going
+	 * through java.time, falling back to it for other forms.
+	 * 
+	 * @param text is the timestamp.
+	 * @return epoch milliseconds.
+	 */
+	public static long parseTimestamp(String text) {
+		if (text.length() == 25 && text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == 'T'
+				&& text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(22) == ':') {
+			int year = digits(text, 0, 4);
+			int month = digits(text, 5, 2);
+			int day = digits(text, 8, 2);
+			int hour = digits(text, 11, 2);
+			int minute = digits(text, 14, 2);
+			int second = digits(text, 17, 2);
+			int offsetMinutes = digits(text, 20, 2) * 60 + digits(text, 23, 2);
+			char sign = text.charAt(19);
+			if (year >= 0 && month >= 0 && day >= 0 && hour >= 0 && minute >= 0 && second >= 0 && offsetMinutes >= 0
+					&& (sign == '+' || sign == '-')) {
+				long seconds = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+				seconds -= (sign == '+' ? offsetMinutes : -offsetMinutes) * 60L;
+				return seconds * 1000;
+			}
+		}
+		return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Formats a time as a request date in exchange time, e.g. 2021-03-08 09:15.
+	 * 
+	 * @param millis is the time in epoch milliseconds.
+	 * @return String
+	 */
+	public static String formatDate(long millis) {
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), EXCHANGE_ZONE).format(REQUEST_DATE);
+	}
+
+	private static int digits(String text, int start, int length) {
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static long epochDay(int year, int month, int day) {
+		// days from civil, proleptic Gregorian
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+}
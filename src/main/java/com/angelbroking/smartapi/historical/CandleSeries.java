@@ -0,0 +1,293 @@
+package com.angelbroking.smartapi.historical;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Candles of one instrument held column by column in primitive arrays.
+ * 
+ * The arrays returned by the getters are the backing arrays and may be longer
+ * than the series; only the first {@link #size()} entries are valid. Times are
+ * the candle start in epoch milliseconds.
+ */
+public class CandleSeries {
+
+	/** Start of the equity session, 09:15, in minutes after midnight IST. */
+	public static final int SESSION_OPEN_MINUTE = 555;
+
+	private static final long IST_OFFSET_MILLIS = 19800000L;
+	private static final long DAY_MILLIS = 86400000L;
+
+	private long[] time;
+	private double[] open;
+	private double[] high;
+	private double[] low;
+	private double[] close;
+	private long[] volume;
+	private int size;
+
+	public CandleSeries() {
+		this(256);
+	}
+
+	/**
+	 * @param capacity is the number of candles expected.
+	 */
+	public CandleSeries(int capacity) {
+		int length = Math.max(capacity, 1);
+		time = new long[length];
+		open = new double[length];
+		high = new double[length];
+		low = new double[length];
+		close = new double[length];
+		volume = new long[length];
+	}
+
+	/**
+	 * Wraps existing columns without copying them.
+	 * 
+	 * @param size is the number of valid candles in the columns.
+	 */
+	public CandleSeries(long[] time, double[] open, double[] high, double[] low, double[] close, long[] volume,
+			int size) {
+		this.time = time;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.size = size;
+	}
+
+	/** Appends a candle. */
+	public void add(long time, double open, double high, double low, double close, long volume) {
+		if (size == this.time.length) {
+			grow(Math.max(size * 2, 16));
+		}
+		this.time[size] = time;
+		this.open[size] = open;
+		this.high[size] = high;
+		this.low[size] = low;
+		this.close[size] = close;
+		this.volume[size] = volume;
+		size++;
+	}
+
+	/** Appends every candle of another series. */
+	public void addAll(CandleSeries other) {
+		if (size + other.size > time.length) {
+			grow(Math.max(size + other.size, size * 2));
+		}
+		System.arraycopy(other.time, 0, time, size, other.size);
+		System.arraycopy(other.open, 0, open, size, other.size);
+		System.arraycopy(other.high, 0, high, size, other.size);
+		System.arraycopy(other.low, 0, low, size, other.size);
+		System.arraycopy(other.close, 0, close, size, other.size);
+		System.arraycopy(other.volume, 0, volume, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Orders the candles by time and keeps the last of candles with the same
+	 * time, e.g. where two downloaded chunks overlap.
+	 */
+	public void sortAndDeduplicate() {
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; i++) {
+			sorted = time[i - 1] <= time[i];
+		}
+		if (!sorted) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			// stable, so the last of candles with the same time stays last
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int byTime = Long.compare(time[a], time[b]);
+					return byTime != 0 ? byTime : Integer.compare(a, b);
+				}
+			});
+			permute(order);
+		}
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (count > 0 && time[count - 1] == time[i]) {
+				count--;
+			}
+			move(i, count++);
+		}
+		size = count;
+	}
+
+	/**
+	 * Returns the index of the candle starting at a time.
+	 * 
+	 * @param time is the candle start in epoch milliseconds.
+	 * @return the index, or -(insertion point) - 1 if absent.
+	 */
+	public int indexOf(long time) {
+		return Arrays.binarySearch(this.time, 0, size, time);
+	}
+
+	/**
+	 * Returns the candles starting within a range.
+	 * 
+	 * @param from is the first start time included.
+	 * @param to   is the last start time included.
+	 * @return CandleSeries
+	 */
+	public CandleSeries slice(long from, long to) {
+		int start = indexOf(from);
+		if (start < 0) {
+			start = -start - 1;
+		}
+		int end = indexOf(to);
+		end = end < 0 ? -end - 1 : end + 1;
+		CandleSeries slice = new CandleSeries(Math.max(end - start, 1));
+		for (int i = start; i < end; i++) {
+			slice.add(time[i], open[i], high[i], low[i], close[i], volume[i]);
+		}
+		return slice;
+	}
+
+	/**
+	 * Aggregates sorted candles into coarser ones anchored at the 09:15 IST
+	 * equity session open.
+	 * 
+	 * @param interval is the coarser interval, e.g. FIFTEEN_MINUTE.
+	 * @return CandleSeries
+	 */
+	public CandleSeries resample(CandleInterval interval) {
+		return resample(interval, SESSION_OPEN_MINUTE);
+	}
+
+	/**
+	 * Aggregates sorted candles into coarser ones, taking the first open, the
+	 * highest high, the lowest low, the last close and the total volume of
+	 * each bucket. Intraday buckets start at the session open and daily ones at
+	 * midnight IST.
+	 * 
+	 * @param interval          is the coarser interval.
+	 * @param sessionOpenMinute is the session open in minutes after midnight IST,
+	 *                          e.g. 540 for MCX.
+	 * @return CandleSeries
+	 */
+	public CandleSeries resample(CandleInterval interval, int sessionOpenMinute) {
+		CandleSeries resampled = new CandleSeries(size);
+		for (int i = 0; i < size; i++) {
+			long bucket = bucket(time[i], interval.getMillis(), sessionOpenMinute);
+			int last = resampled.size - 1;
+			if (last >= 0 && resampled.time[last] == bucket) {
+				resampled.high[last] = Math.max(resampled.high[last], high[i]);
+				resampled.low[last] = Math.min(resampled.low[last], low[i]);
+				resampled.close[last] = close[i];
+				resampled.volume[last] += volume[i];
+			} else {
+				resampled.add(bucket, open[i], high[i], low[i], close[i], volume[i]);
+			}
+		}
+		return resampled;
+	}
+
+	/**
+	 * Returns the start of the bucket holding a time.
+	 * 
+	 * @param time              is in epoch milliseconds.
+	 * @param millis            is the bucket length.
+	 * @param sessionOpenMinute is the session open in minutes after midnight IST.
+	 * @return long
+	 */
+	public static long bucket(long time, long millis, int sessionOpenMinute) {
+		long local = time + IST_OFFSET_MILLIS;
+		long day = Math.floorDiv(local, DAY_MILLIS) * DAY_MILLIS;
+		if (millis >= DAY_MILLIS) {
+			return day - IST_OFFSET_MILLIS;
+		}
+		long open = day + sessionOpenMinute * 60000L;
+		return open + Math.floorDiv(local - open, millis) * millis - IST_OFFSET_MILLIS;
+	}
+
+	/** Shrinks the backing arrays to the size of the series. */
+	public void trimToSize() {
+		if (size < time.length) {
+			grow(Math.max(size, 1));
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long[] getTime() {
+		return time;
+	}
+
+	public double[] getOpen() {
+		return open;
+	}
+
+	public double[] getHigh() {
+		return high;
+	}
+
+	public double[] getLow() {
+		return low;
+	}
+
+	public double[] getClose() {
+		return close;
+	}
+
+	public long[] getVolume() {
+		return volume;
+	}
+
+	@Override
+	public String toString() {
+		return "CandleSeries [size=" + size + (size > 0 ? ", from=" + time[0] + ", to=" + time[size - 1] : "") + "]";
+	}
+
+	private void move(int from, int to) {
+		time[to] = time[from];
+		open[to] = open[from];
+		high[to] = high[from];
+		low[to] = low[from];
+		close[to] = close[from];
+		volume[to] = volume[from];
+	}
+
+	private void permute(Integer[] order) {
+		long[] sortedTime = new long[time.length];
+		double[] sortedOpen = new double[time.length];
+		double[] sortedHigh = new double[time.length];
+		double[] sortedLow = new double[time.length];
+		double[] sortedClose = new double[time.length];
+		long[] sortedVolume = new long[time.length];
+		for (int i = 0; i < size; i++) {
+			int j = order[i];
+			sortedTime[i] = time[j];
+			sortedOpen[i] = open[j];
+			sortedHigh[i] = high[j];
+			sortedLow[i] = low[j];
+			sortedClose[i] = close[j];
+			sortedVolume[i] = volume[j];
+		}
+		time = sortedTime;
+		open = sortedOpen;
+		high = sortedHigh;
+		low = sortedLow;
+		close = sortedClose;
+		volume = sortedVolume;
+	}
+
+	private void grow(int capacity) {
+		time = Arrays.copyOf(time, capacity);
+		open = Arrays.copyOf(open, capacity);
+		high = Arrays.copyOf(high, capacity);
+		low = Arrays.copyOf(low, capacity);
+		close = Arrays.copyOf(close, capacity);
+		volume = Arrays.copyOf(volume, capacity);
+	}
+}
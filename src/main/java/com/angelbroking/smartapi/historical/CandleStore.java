@@ -0,0 +1,375 @@
+package com.angelbroking.smartapi.historical;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
+
+/**
+ * On-disk cache of candles in front of the historical data API.
+ * 
+ * Every exchange, token and interval has its own file,
+ * directory/EXCHANGE/token/INTERVAL.candles, holding the candles column by
+ * column together with the time ranges already downloaded. A request fetches
+ * only the parts of its range not yet covered and merges them into the file.
+ * Reads copy the requested rows of each column out of the file in one
+ * positional read per column.
+ * 
+ * <pre>
+ * long magic | int count | int rangeCount | rangeCount x (long from, long to) |
+ * long time[count] | double open[count] | double high[count] | double low[count] |
+ * double close[count] | long volume[count]
+ * </pre>
+ * 
+ * Files are rewritten to a uniquely named temporary file and renamed, so a
+ * crash leaves the previous version intact. Files are never memory-mapped,
+ * since a mapping left to the garbage collector would keep the rename from
+ * replacing the file on Windows.
+ */
+public class CandleStore {
+
+	public static final long MAGIC = 0x534d415254434e44L;
+
+	private static final int HEADER_SIZE = 16;
+
+	private final File directory;
+	private final CandleDownloader downloader;
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * @param directory  is the root directory of the cache.
+	 * @param downloader fetches missing candles, e.g.
+	 *                   SmartConnect.getCandleDownloader().
+	 */
+	public CandleStore(File directory, CandleDownloader downloader) {
+		this.directory = directory;
+		this.downloader = downloader;
+	}
+
+	/**
+	 * Returns the candles of a range, downloading the parts not yet cached.
+	 * Candles still forming, after the start of the current interval, are
+	 * returned but not marked as cached.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range in epoch milliseconds.
+	 * @param to          is the end of the range in epoch milliseconds.
+	 * @return CandleSeries ordered by time.
+	 * @throws IOException       if the cache can't be read or written.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public CandleSeries getCandles(String exchange, String symbolToken, CandleInterval interval, long from, long to)
+			throws IOException, SmartAPIException {
+		File file = file(exchange, symbolToken, interval);
+		synchronized (lock(file)) {
+			List<long[]> coverage = readCoverage(file);
+			List<long[]> gaps = gaps(coverage, from, to);
+			if (!gaps.isEmpty()) {
+				long settled = System.currentTimeMillis() - interval.getMillis();
+				CandleSeries merged = read(file, Long.MIN_VALUE, Long.MAX_VALUE);
+				for (long[] gap : gaps) {
+					merged.addAll(downloader.download(exchange, symbolToken, interval, gap[0], gap[1]));
+					if (gap[0] <= settled) {
+						coverage = addRange(coverage, gap[0], Math.min(gap[1], settled));
+					}
+				}
+				merged.sortAndDeduplicate();
+				write(file, merged, coverage);
+				return merged.slice(from, to);
+			}
+			return read(file, from, to);
+		}
+	}
+
+	/**
+	 * Stores candles downloaded elsewhere, e.g. by a bulk download, and marks
+	 * their range as cached.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range downloaded.
+	 * @param to          is the end of the range downloaded.
+	 * @param series      are the candles of the range.
+	 * @throws IOException if the cache can't be read or written.
+	 */
+	public void put(String exchange, String symbolToken, CandleInterval interval, long from, long to,
+			CandleSeries series) throws IOException {
+		File file = file(exchange, symbolToken, interval);
+		synchronized (lock(file)) {
+			List<long[]> coverage = readCoverage(file);
+			long settled = System.currentTimeMillis() - interval.getMillis();
+			if (from <= settled) {
+				coverage = addRange(coverage, from, Math.min(to, settled));
+			}
+			CandleSeries merged = read(file, Long.MIN_VALUE, Long.MAX_VALUE);
+			merged.addAll(series);
+			merged.sortAndDeduplicate();
+			write(file, merged, coverage);
+		}
+	}
+
+	/**
+	 * Returns the cached candles of a range without downloading.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @param from        is the start of the range in epoch milliseconds.
+	 * @param to          is the end of the range in epoch milliseconds.
+	 * @return CandleSeries ordered by time.
+	 * @throws IOException if the cache can't be read.
+	 */
+	public CandleSeries read(String exchange, String symbolToken, CandleInterval interval, long from, long to)
+			throws IOException {
+		File file = file(exchange, symbolToken, interval);
+		synchronized (lock(file)) {
+			return read(file, from, to);
+		}
+	}
+
+	/**
+	 * Returns the ranges already cached, in order.
+	 * 
+	 * @param exchange    is the exchange, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @param interval    is the candle interval.
+	 * @return pairs of range start and end in epoch milliseconds.
+	 * @throws IOException if the cache can't be read.
+	 */
+	public List<long[]> getCoverage(String exchange, String symbolToken, CandleInterval interval) throws IOException {
+		File file = file(exchange, symbolToken, interval);
+		synchronized (lock(file)) {
+			return readCoverage(file);
+		}
+	}
+
+	/**
+	 * Returns the parts of a range not covered by sorted, disjoint ranges.
+	 * 
+	 * @param coverage are the ranges covered.
+	 * @param from     is the start of the range.
+	 * @param to       is the end of the range.
+	 * @return pairs of gap start and end, in order.
+	 */
+	public static List<long[]> gaps(List<long[]> coverage, long from, long to) {
+		List<long[]> gaps = new ArrayList<long[]>();
+		long start = from;
+		for (long[] range : coverage) {
+			if (range[1] < start) {
+				continue;
+			}
+			if (range[0] > to) {
+				break;
+			}
+			if (range[0] > start) {
+				gaps.add(new long[] { start, range[0] - 1 });
+			}
+			start = Math.max(start, range[1] + 1);
+		}
+		if (start <= to) {
+			gaps.add(new long[] { start, to });
+		}
+		return gaps;
+	}
+
+	private static List<long[]> addRange(List<long[]> coverage, long from, long to) {
+		List<long[]> merged = new ArrayList<long[]>(coverage.size() + 1);
+		long start = from;
+		long end = to;
+		boolean added = false;
+		for (long[] range : coverage) {
+			if (range[1] + 1 < start) {
+				merged.add(range);
+			} else if (range[0] > end + 1) {
+				if (!added) {
+					merged.add(new long[] { start, end });
+					added = true;
+				}
+				merged.add(range);
+			} else {
+				start = Math.min(start, range[0]);
+				end = Math.max(end, range[1]);
+			}
+		}
+		if (!added) {
+			merged.add(new long[] { start, end });
+		}
+		return merged;
+	}
+
+	private File file(String exchange, String symbolToken, CandleInterval interval) {
+		return new File(new File(new File(directory, exchange), symbolToken), interval.name() + ".candles");
+	}
+
+	private Object lock(File file) {
+		String key = file.getPath();
+		Object lock = locks.get(key);
+		if (lock == null) {
+			Object created = new Object();
+			lock = locks.putIfAbsent(key, created);
+			if (lock == null) {
+				lock = created;
+			}
+		}
+		return lock;
+	}
+
+	private static List<long[]> readCoverage(File file) throws IOException {
+		List<long[]> coverage = new ArrayList<long[]>();
+		if (!file.exists()) {
+			return coverage;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(channel, file);
+			int ranges = header.getInt(12);
+			ByteBuffer buffer = readFully(channel, HEADER_SIZE, ranges * 16);
+			for (int i = 0; i < ranges; i++) {
+				coverage.add(new long[] { buffer.getLong(i * 16), buffer.getLong(i * 16 + 8) });
+			}
+		}
+		return coverage;
+	}
+
+	private static CandleSeries read(File file, long from, long to) throws IOException {
+		if (!file.exists()) {
+			return new CandleSeries(1);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(channel, file);
+			int count = header.getInt(8);
+			int ranges = header.getInt(12);
+			long timeOffset = HEADER_SIZE + ranges * 16L;
+			ByteBuffer probe = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			int start = search(channel, probe, timeOffset, count, from, false);
+			int end = search(channel, probe, timeOffset, count, to, true);
+			int size = Math.max(end - start, 0);
+			long[] time = new long[Math.max(size, 1)];
+			double[] open = new double[time.length];
+			double[] high = new double[time.length];
+			double[] low = new double[time.length];
+			double[] close = new double[time.length];
+			long[] volume = new long[time.length];
+			long column = count * 8L;
+			long row = start * 8L;
+			int length = size * 8;
+			readFully(channel, timeOffset + row, length).asLongBuffer().get(time, 0, size);
+			readFully(channel, timeOffset + column + row, length).asDoubleBuffer().get(open, 0, size);
+			readFully(channel, timeOffset + 2 * column + row, length).asDoubleBuffer().get(high, 0, size);
+			readFully(channel, timeOffset + 3 * column + row, length).asDoubleBuffer().get(low, 0, size);
+			readFully(channel, timeOffset + 4 * column + row, length).asDoubleBuffer().get(close, 0, size);
+			readFully(channel, timeOffset + 5 * column + row, length).asLongBuffer().get(volume, 0, size);
+			return new CandleSeries(time, open, high, low, close, volume, size);
+		}
+	}
+
+	private static void write(File file, CandleSeries series, List<long[]> coverage) throws IOException {
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("can't create candle directory " + parent);
+		}
+		int count = series.size();
+		int timeOffset = HEADER_SIZE + coverage.size() * 16;
+		long size = timeOffset + 48L * count;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException(file + " would exceed 2 GB");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(0, MAGIC);
+		buffer.putInt(8, count);
+		buffer.putInt(12, coverage.size());
+		for (int i = 0; i < coverage.size(); i++) {
+			buffer.putLong(HEADER_SIZE + i * 16, coverage.get(i)[0]);
+			buffer.putLong(HEADER_SIZE + i * 16 + 8, coverage.get(i)[1]);
+		}
+		int column = count * 8;
+		position(buffer, timeOffset);
+		buffer.asLongBuffer().put(series.getTime(), 0, count);
+		position(buffer, timeOffset + column);
+		buffer.asDoubleBuffer().put(series.getOpen(), 0, count);
+		position(buffer, timeOffset + 2 * column);
+		buffer.asDoubleBuffer().put(series.getHigh(), 0, count);
+		position(buffer, timeOffset + 3 * column);
+		buffer.asDoubleBuffer().put(series.getLow(), 0, count);
+		position(buffer, timeOffset + 4 * column);
+		buffer.asDoubleBuffer().put(series.getClose(), 0, count);
+		position(buffer, timeOffset + 5 * column);
+		buffer.asLongBuffer().put(series.getVolume(), 0, count);
+		position(buffer, 0);
+		Path temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel, File file) throws IOException {
+		if (channel.size() < HEADER_SIZE) {
+			throw new IOException(file + " is not a candle file");
+		}
+		ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+		if (header.getLong(0) != MAGIC) {
+			throw new IOException(file + " is not a candle file");
+		}
+		return header;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("candle file is truncated");
+			}
+		}
+		position(buffer, 0);
+		return buffer;
+	}
+
+	/** Returns the first row with time after (or at, unless inclusive) the key. */
+	private static int search(FileChannel channel, ByteBuffer probe, long timeOffset, int count, long key,
+			boolean inclusive) throws IOException {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			((Buffer) probe).clear();
+			while (probe.hasRemaining()) {
+				if (channel.read(probe, timeOffset + mid * 8L + probe.position()) < 0) {
+					throw new IOException("candle file is truncated");
+				}
+			}
+			long time = probe.getLong(0);
+			if (time < key || (inclusive && time == key)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static void position(ByteBuffer buffer, int position) {
+		((Buffer) buffer).position(position);
+	}
+}
@@ -0,0 +1,218 @@
+package com.angelbroking.smartapi.historical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Aligns the candles of many instruments on a common time index and builds a
+ * {@link CandlePanel} of one field.
+ * 
+ * The index is the union of the candle times of all series, after resampling
+ * when an interval is set. Series are resampled and the matrix is filled in
+ * parallel, each task writing its own block of rows.
+ * 
+ * <pre>
+ * PanelBuilder builder = new PanelBuilder();
+ * builder.add("SBIN-EQ", sbin);
+ * builder.add("INFY-EQ", infy);
+ * builder.setInterval(CandleInterval.FIFTEEN_MINUTE);
+ * CandlePanel returns = builder.build(CandlePanel.Field.RETURN);
+ * </pre>
+ */
+public class PanelBuilder {
+
+	private static final int ROWS_PER_TASK = 1024;
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<CandleSeries> series = new ArrayList<CandleSeries>();
+	private CandleInterval interval;
+	private int sessionOpenMinute = CandleSeries.SESSION_OPEN_MINUTE;
+	private boolean forwardFill = true;
+	private ExecutorService executor = ForkJoinPool.commonPool();
+
+	/**
+	 * Adds a column.
+	 * 
+	 * @param name    identifies the column, e.g. the trading symbol.
+	 * @param candles are sorted by time, as returned by getCandles.
+	 */
+	public void add(String name, CandleSeries candles) {
+		names.add(name);
+		series.add(candles);
+	}
+
+	/**
+	 * Resamples every series to a coarser interval before aligning.
+	 * 
+	 * @param interval is the interval, or null to align the candles as they are.
+	 */
+	public void setInterval(CandleInterval interval) {
+		setInterval(interval, CandleSeries.SESSION_OPEN_MINUTE);
+	}
+
+	/**
+	 * Resamples every series to a coarser interval before aligning.
+	 * 
+	 * @param interval          is the interval, or null to align the candles as
+	 *                          they are.
+	 * @param sessionOpenMinute is the session open in minutes after midnight IST.
+	 */
+	public void setInterval(CandleInterval interval, int sessionOpenMinute) {
+		this.interval = interval;
+		this.sessionOpenMinute = sessionOpenMinute;
+	}
+
+	/**
+	 * Sets how gaps are filled. Prices carry the last close forward, volumes
+	 * and returns become 0. Without filling, gaps are NaN.
+	 * 
+	 * @param forwardFill is true by default.
+	 */
+	public void setForwardFill(boolean forwardFill) {
+		this.forwardFill = forwardFill;
+	}
+
+	/**
+	 * Sets the executor running the build tasks.
+	 * 
+	 * @param executor is the common fork-join pool by default.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Builds the panel of a field.
+	 * 
+	 * @param field is the candle field of the cells.
+	 * @return CandlePanel
+	 */
+	public CandlePanel build(final CandlePanel.Field field) {
+		final String[] columns = names.toArray(new String[names.size()]);
+		final CandleSeries[] aligned = resample();
+		final long[] time = index(aligned);
+		final double[] values = new double[time.length * columns.length];
+		final boolean[] gaps = new boolean[values.length];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < time.length; start += ROWS_PER_TASK) {
+			final int from = start;
+			final int to = Math.min(start + ROWS_PER_TASK, time.length);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int column = 0; column < columns.length; column++) {
+						fill(field, aligned[column], time, from, to, column, columns.length, values, gaps);
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+		return new CandlePanel(field, columns, time, values, gaps);
+	}
+
+	private CandleSeries[] resample() {
+		final CandleSeries[] aligned = series.toArray(new CandleSeries[series.size()]);
+		if (interval == null) {
+			return aligned;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < aligned.length; i++) {
+			final int column = i;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					aligned[column] = aligned[column].resample(interval, sessionOpenMinute);
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+		return aligned;
+	}
+
+	private static long[] index(CandleSeries[] aligned) {
+		int total = 0;
+		for (CandleSeries candles : aligned) {
+			total += candles.size();
+		}
+		long[] all = new long[total];
+		int offset = 0;
+		for (CandleSeries candles : aligned) {
+			System.arraycopy(candles.getTime(), 0, all, offset, candles.size());
+			offset += candles.size();
+		}
+		Arrays.parallelSort(all);
+		int distinct = 0;
+		for (int i = 0; i < total; i++) {
+			if (distinct == 0 || all[i] != all[distinct - 1]) {
+				all[distinct++] = all[i];
+			}
+		}
+		return Arrays.copyOf(all, distinct);
+	}
+
+	/** Fills rows from to to of a column, walking the series along the index. */
+	private void fill(CandlePanel.Field field, CandleSeries candles, long[] time, int from, int to, int column,
+			int columns, double[] values, boolean[] gaps) {
+		long[] times = candles.getTime();
+		double[] close = candles.getClose();
+		int size = candles.size();
+		int next = Arrays.binarySearch(times, 0, size, time[from]);
+		if (next < 0) {
+			next = -next - 1;
+		}
+		for (int row = from, cell = from * columns + column; row < to; row++, cell += columns) {
+			if (next < size && times[next] == time[row]) {
+				values[cell] = value(field, candles, next);
+				next++;
+			} else {
+				gaps[cell] = true;
+				if (!forwardFill || next == 0) {
+					values[cell] = Double.NaN;
+				} else if (field == CandlePanel.Field.VOLUME || field == CandlePanel.Field.RETURN) {
+					values[cell] = 0;
+				} else {
+					values[cell] = close[next - 1];
+				}
+			}
+		}
+	}
+
+	private static double value(CandlePanel.Field field, CandleSeries candles, int i) {
+		switch (field) {
+		case OPEN:
+			return candles.getOpen()[i];
+		case HIGH:
+			return candles.getHigh()[i];
+		case LOW:
+			return candles.getLow()[i];
+		case CLOSE:
+			return candles.getClose()[i];
+		case VOLUME:
+			return candles.getVolume()[i];
+		default:
+			double[] close = candles.getClose();
+			return i == 0 ? Double.NaN : close[i] / close[i - 1] - 1;
+		}
+	}
+
+	private void invokeAll(List<Callable<Void>> tasks) {
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("panel build interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("panel build failed", e.getCause());
+		}
+	}
+}
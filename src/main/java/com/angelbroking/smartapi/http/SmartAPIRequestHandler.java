@@ -3,6 +3,7 @@ package com.angelbroking.smartapi.http;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.Proxy;
@@ -16,6 +17,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.angelbroking.smartapi.SmartConnect;
+import com.angelbroking.smartapi.http.exceptions.DataException;
 import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
 
 import okhttp3.FormBody;
@@ -57,6 +59,16 @@ public class SmartAPIRequestHandler {
 		}
 	}
 
+	/**
+	 * Returns the OkHttp client making the requests, so that other connections
+	 * such as the ticker feed can share its dispatcher and connection pool.
+	 * 
+	 * @return OkHttpClient
+	 */
+	public OkHttpClient getClient() {
+		return client;
+	}
+
 	public JSONObject apiHeaders() {
 		try {
 			JSONObject headers = new JSONObject();
@@ -157,6 +169,41 @@ public class SmartAPIRequestHandler {
 		return new SmartAPIResponseHandler().handle(response, body);
 	}
 
+	/**
+	 * Makes a POST request and streams the JSON response to a reader instead of
+	 * holding the whole body as a String.
+	 * 
+	 * @return the value read from the body.
+	 * @param url         is the endpoint to which request has to be sent.
+	 * @param apiKey      is the api key of the Smart API Connect app.
+	 * @param accessToken is the access token obtained after successful login
+	 *                    process.
+	 * @param params      is the map of params which has to be sent in the body.
+	 * @param reader      reads the response body.
+	 * @throws IOException       is thrown when there is a connection related error.
+	 * @throws SmartAPIException is thrown for all Smart API Trade related errors.
+	 */
+	public <T> T postRequest(String apiKey, String url, JSONObject params, String accessToken, BodyReader<T> reader)
+			throws IOException, SmartAPIException {
+		Request request = createPostRequest(apiKey, url, params, accessToken);
+		try (Response response = client.newCall(request).execute()) {
+			String contentType = response.header("Content-Type");
+			if (contentType == null || !contentType.contains("json")) {
+				throw new DataException("Unexpected content type received from server: " + contentType + " "
+						+ response.body().string(), "AG8001");
+			}
+			return reader.read(response.body().charStream());
+		}
+	}
+
+	/**
+	 * Reads a response body streamed by
+	 * {@link SmartAPIRequestHandler#postRequest(String, String, JSONObject, String, BodyReader)}.
+	 */
+	public interface BodyReader<T> {
+		T read(Reader body) throws IOException, SmartAPIException;
+	}
+
 	/**
 	 * Make a JSON POST request.
 	 * 
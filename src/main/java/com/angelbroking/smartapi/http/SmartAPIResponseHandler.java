@@ -44,6 +44,22 @@ public class SmartAPIResponseHandler {
 		}
 	}
 
+	/**
+	 * Returns the exception for an error response read by the caller, e.g. from
+	 * a streamed body.
+	 * 
+	 * @param jsonObject holds the "message" of the response.
+	 * @param code       is the error code of the response.
+	 * @return SmartAPIException
+	 */
+	public SmartAPIException exception(JSONObject jsonObject, String code) {
+		try {
+			return dealWithException(jsonObject, code);
+		} catch (JSONException e) {
+			return new SmartAPIException(jsonObject.optString("message"), code);
+		}
+	}
+
 	private SmartAPIException dealWithException(JSONObject jsonObject, String code) throws JSONException {
 
 		switch (code) {
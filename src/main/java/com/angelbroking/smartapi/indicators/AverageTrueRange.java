@@ -0,0 +1,58 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Wilder's average true range, seeded with the simple average of the first
+ * period true ranges. The first bar's range is its high minus its low.
+ */
+public class AverageTrueRange implements Indicator {
+
+	private final int period;
+	private int count;
+	private double lastClose;
+	private double value;
+
+	/**
+	 * @param period is the number of bars averaged, usually 14.
+	 */
+	public AverageTrueRange(int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.period = period;
+	}
+
+	@Override
+	public void update(long time, double open, double high, double low, double close, long volume) {
+		double range = high - low;
+		if (count > 0) {
+			range = Math.max(range, Math.max(Math.abs(high - lastClose), Math.abs(low - lastClose)));
+		}
+		if (count < period) {
+			value += range / period;
+		} else {
+			value += (range - value) / period;
+		}
+		lastClose = close;
+		count++;
+	}
+
+	@Override
+	public boolean isReady() {
+		return count >= period;
+	}
+
+	@Override
+	public double getValue() {
+		return count >= period ? value : Double.NaN;
+	}
+
+	@Override
+	public Indicator newInstance() {
+		return new AverageTrueRange(period);
+	}
+
+	@Override
+	public String toString() {
+		return "ATR(" + period + ")";
+	}
+}
@@ -0,0 +1,81 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Fixed-capacity ring of doubles which overwrites its oldest value once full.
+ */
+public class DoubleRing {
+
+	private final double[] values;
+	private int head;
+	private int size;
+
+	/**
+	 * @param capacity is the number of values kept.
+	 */
+	public DoubleRing(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Appends a value.
+	 * 
+	 * @return the value overwritten, or NaN while the ring is filling.
+	 */
+	public double add(double value) {
+		double evicted = size == values.length ? values[head] : Double.NaN;
+		values[head] = value;
+		head = head + 1 == values.length ? 0 : head + 1;
+		if (size < values.length) {
+			size++;
+		}
+		return evicted;
+	}
+
+	/**
+	 * Returns a value by age.
+	 * 
+	 * @param age is 0 for the latest value.
+	 * @return double
+	 */
+	public double get(int age) {
+		if (age < 0 || age >= size) {
+			throw new IndexOutOfBoundsException("age " + age + ", size " + size);
+		}
+		int index = head - 1 - age;
+		return values[index < 0 ? index + values.length : index];
+	}
+
+	/** Returns the sum of the values, in O(capacity). */
+	public double sum() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	/** Returns whether the ring is at its next write to its first slot. */
+	boolean isWrapped() {
+		return head == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return values.length;
+	}
+
+	public boolean isFull() {
+		return size == values.length;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,54 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Exponential average of closes with a smoothing of 2 / (period + 1), seeded
+ * with the simple average of the first period closes.
+ */
+public class ExponentialMovingAverage implements Indicator {
+
+	private final int period;
+	private final double alpha;
+	private int count;
+	private double value;
+
+	/**
+	 * @param period is the number of bars of the equivalent simple average.
+	 */
+	public ExponentialMovingAverage(int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.period = period;
+		this.alpha = 2.0 / (period + 1);
+	}
+
+	@Override
+	public void update(long time, double open, double high, double low, double close, long volume) {
+		if (count < period) {
+			value += close / period;
+			count++;
+		} else {
+			value += alpha * (close - value);
+		}
+	}
+
+	@Override
+	public boolean isReady() {
+		return count >= period;
+	}
+
+	@Override
+	public double getValue() {
+		return count >= period ? value : Double.NaN;
+	}
+
+	@Override
+	public Indicator newInstance() {
+		return new ExponentialMovingAverage(period);
+	}
+
+	@Override
+	public String toString() {
+		return "EMA(" + period + ")";
+	}
+}
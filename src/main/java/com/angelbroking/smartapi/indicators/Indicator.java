@@ -0,0 +1,26 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * An indicator updated one bar at a time in constant time.
+ * 
+ * A tick is fed as a bar whose prices are all the traded price and whose
+ * volume is the traded quantity.
+ */
+public interface Indicator {
+
+	/**
+	 * Adds the next bar.
+	 * 
+	 * @param time is the bar start, or tick time, in epoch milliseconds.
+	 */
+	void update(long time, double open, double high, double low, double close, long volume);
+
+	/** Returns whether enough bars were added for a value. */
+	boolean isReady();
+
+	/** Returns the current value, or NaN until ready. */
+	double getValue();
+
+	/** Returns a new indicator with the same parameters and no bars. */
+	Indicator newInstance();
+}
@@ -0,0 +1,223 @@
+package com.angelbroking.smartapi.indicators;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.angelbroking.smartapi.feed.OnBar;
+import com.angelbroking.smartapi.feed.OnTick;
+import com.angelbroking.smartapi.feed.Tick;
+import com.angelbroking.smartapi.historical.CandleSeries;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Keeps a set of indicators for every token, updating all of a token's
+ * indicators with each bar in one pass.
+ * 
+ * Indicators are added as prototypes before the first update and copied for
+ * each token on its first bar. Their latest values are mirrored in one flat
+ * array, so reading the values of a token or one indicator across tokens
+ * doesn't touch the indicator objects.
+ * 
+ * Register the engine as a bar listener of a bar aggregator producing its
+ * interval, or as a tick listener for tick-by-tick indicators, and seed it
+ * from history with {@link #seed(int, CandleSeries)}.
+ * 
+ * <pre>
+ * IndicatorEngine engine = new IndicatorEngine(500, 60000);
+ * int ema = engine.add("ema20", new ExponentialMovingAverage(20));
+ * int rsi = engine.add("rsi14", new RelativeStrengthIndex(14));
+ * engine.seed(3045, smartConnect.getCandles("NSE", "3045", CandleInterval.ONE_MINUTE, from, to));
+ * aggregator.addOnBarListener(engine);
+ * </pre>
+ */
+public class IndicatorEngine implements OnBar, OnTick {
+
+	private final int maxTokens;
+	private final long intervalMillis;
+	private final List<String> names = new ArrayList<String>();
+	private final List<Indicator> prototypes = new ArrayList<Indicator>();
+	private final IntIntHashMap slots;
+	private Indicator[][] indicators;
+	private double[] values;
+	private final long[] lastTime;
+
+	/**
+	 * @param maxTokens      is the largest number of tokens tracked.
+	 * @param intervalMillis is the interval of the bars consumed from a bar
+	 *                       aggregator; bars of other intervals are ignored.
+	 */
+	public IndicatorEngine(int maxTokens, long intervalMillis) {
+		this.maxTokens = maxTokens;
+		this.intervalMillis = intervalMillis;
+		this.slots = new IntIntHashMap(maxTokens, -1);
+		this.lastTime = new long[maxTokens];
+	}
+
+	/**
+	 * Adds an indicator kept for every token.
+	 * 
+	 * @param name      identifies the indicator.
+	 * @param prototype is copied for each token.
+	 * @return the index of the indicator in the values.
+	 */
+	public synchronized int add(String name, Indicator prototype) {
+		if (indicators != null) {
+			throw new IllegalStateException("indicators must be added before the first update");
+		}
+		names.add(name);
+		prototypes.add(prototype);
+		return prototypes.size() - 1;
+	}
+
+	/**
+	 * Returns the index of an indicator.
+	 * 
+	 * @param name is the name it was added under.
+	 * @return the index, or -1 if absent.
+	 */
+	public synchronized int indexOf(String name) {
+		return names.indexOf(name);
+	}
+
+	@Override
+	public void onBar(int token, long intervalMillis, long startTime, double open, double high, double low,
+			double close, long volume) {
+		if (intervalMillis == this.intervalMillis) {
+			update(token, startTime, open, high, low, close, volume);
+		}
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		long time = tick.exchangeTimestamp > 0 ? tick.exchangeTimestamp : System.currentTimeMillis();
+		double price = tick.lastTradedPrice;
+		update(tick.token, time, price, price, price, price, tick.lastTradedQuantity);
+	}
+
+	/**
+	 * Adds a bar to every indicator of a token.
+	 * 
+	 * @return false if the token is new and the engine is full.
+	 */
+	public synchronized boolean update(int token, long time, double open, double high, double low, double close,
+			long volume) {
+		int slot = slotOf(token);
+		if (slot < 0) {
+			return false;
+		}
+		Indicator[] tokenIndicators = indicators[slot];
+		int offset = slot * tokenIndicators.length;
+		for (int i = 0; i < tokenIndicators.length; i++) {
+			Indicator indicator = tokenIndicators[i];
+			indicator.update(time, open, high, low, close, volume);
+			values[offset + i] = indicator.getValue();
+		}
+		lastTime[slot] = time;
+		return true;
+	}
+
+	/**
+	 * Feeds historical candles of a token, skipping those not after the last
+	 * bar already added so seeding can overlap the live stream.
+	 * 
+	 * @param token   is the instrument token.
+	 * @param candles are sorted by time.
+	 * @return the number of candles added.
+	 */
+	public synchronized int seed(int token, CandleSeries candles) {
+		int slot = slotOf(token);
+		if (slot < 0) {
+			return 0;
+		}
+		long[] time = candles.getTime();
+		double[] open = candles.getOpen();
+		double[] high = candles.getHigh();
+		double[] low = candles.getLow();
+		double[] close = candles.getClose();
+		long[] volume = candles.getVolume();
+		int added = 0;
+		for (int i = 0; i < candles.size(); i++) {
+			if (time[i] > lastTime[slot]) {
+				update(token, time[i], open[i], high[i], low[i], close[i], volume[i]);
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Returns the value of an indicator of a token.
+	 * 
+	 * @param token     is the instrument token.
+	 * @param indicator is the index returned by add.
+	 * @return the value, or NaN if not ready.
+	 */
+	public synchronized double getValue(int token, int indicator) {
+		int slot = slots.get(token);
+		return slot < 0 || values == null ? Double.NaN : values[slot * prototypes.size() + indicator];
+	}
+
+	/**
+	 * Copies the values of every indicator of a token, in the order added.
+	 * 
+	 * @param token is the instrument token.
+	 * @param dst   receives the values.
+	 * @return false if the token has no bars.
+	 */
+	public synchronized boolean getValues(int token, double[] dst) {
+		int slot = slots.get(token);
+		if (slot < 0 || values == null) {
+			return false;
+		}
+		System.arraycopy(values, slot * prototypes.size(), dst, 0, prototypes.size());
+		return true;
+	}
+
+	/**
+	 * Copies the value of one indicator for several tokens, e.g. to rank them.
+	 * 
+	 * @param indicator is the index returned by add.
+	 * @param tokens    are the instrument tokens.
+	 * @param dst       receives the values, NaN for tokens without bars.
+	 */
+	public synchronized void getValues(int indicator, int[] tokens, double[] dst) {
+		int count = prototypes.size();
+		for (int i = 0; i < tokens.length; i++) {
+			int slot = slots.get(tokens[i]);
+			dst[i] = slot < 0 || values == null ? Double.NaN : values[slot * count + indicator];
+		}
+	}
+
+	/**
+	 * Returns the indicator object of a token, e.g. to read its state.
+	 * 
+	 * @return the indicator, or null if the token has no bars.
+	 */
+	public synchronized Indicator getIndicator(int token, int indicator) {
+		int slot = slots.get(token);
+		return slot < 0 || indicators == null ? null : indicators[slot][indicator];
+	}
+
+	private int slotOf(int token) {
+		if (indicators == null) {
+			indicators = new Indicator[maxTokens][];
+			values = new double[maxTokens * prototypes.size()];
+		}
+		int slot = slots.get(token);
+		if (slot < 0) {
+			if (slots.size() >= maxTokens) {
+				return -1;
+			}
+			slot = slots.size();
+			slots.put(token, slot);
+			Indicator[] tokenIndicators = new Indicator[prototypes.size()];
+			for (int i = 0; i < tokenIndicators.length; i++) {
+				tokenIndicators[i] = prototypes.get(i).newInstance();
+				values[slot * tokenIndicators.length + i] = Double.NaN;
+			}
+			indicators[slot] = tokenIndicators;
+			lastTime[slot] = Long.MIN_VALUE;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,69 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Wilder's relative strength index of closes, between 0 and 100. The average
+ * gain and loss are seeded with the simple average of the first period changes
+ * and then smoothed by 1 / period.
+ */
+public class RelativeStrengthIndex implements Indicator {
+
+	private final int period;
+	private int count;
+	private double lastClose;
+	private double averageGain;
+	private double averageLoss;
+
+	/**
+	 * @param period is the number of changes averaged, usually 14.
+	 */
+	public RelativeStrengthIndex(int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.period = period;
+	}
+
+	@Override
+	public void update(long time, double open, double high, double low, double close, long volume) {
+		if (count > 0) {
+			double change = close - lastClose;
+			double gain = change > 0 ? change : 0;
+			double loss = change < 0 ? -change : 0;
+			if (count <= period) {
+				averageGain += gain / period;
+				averageLoss += loss / period;
+			} else {
+				averageGain += (gain - averageGain) / period;
+				averageLoss += (loss - averageLoss) / period;
+			}
+		}
+		lastClose = close;
+		count++;
+	}
+
+	@Override
+	public boolean isReady() {
+		return count > period;
+	}
+
+	@Override
+	public double getValue() {
+		if (count <= period) {
+			return Double.NaN;
+		}
+		if (averageLoss == 0) {
+			return averageGain == 0 ? 50 : 100;
+		}
+		return 100 - 100 / (1 + averageGain / averageLoss);
+	}
+
+	@Override
+	public Indicator newInstance() {
+		return new RelativeStrengthIndex(period);
+	}
+
+	@Override
+	public String toString() {
+		return "RSI(" + period + ")";
+	}
+}
@@ -0,0 +1,48 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Mean of the last closes, kept as a running sum over a ring of closes. The
+ * sum is recomputed once per lap of the ring so rounding can't accumulate.
+ */
+public class SimpleMovingAverage implements Indicator {
+
+	private final DoubleRing closes;
+	private double sum;
+
+	/**
+	 * @param period is the number of bars averaged.
+	 */
+	public SimpleMovingAverage(int period) {
+		this.closes = new DoubleRing(period);
+	}
+
+	@Override
+	public void update(long time, double open, double high, double low, double close, long volume) {
+		double evicted = closes.add(close);
+		if (closes.isFull() && closes.isWrapped()) {
+			sum = closes.sum();
+		} else {
+			sum += Double.isNaN(evicted) ? close : close - evicted;
+		}
+	}
+
+	@Override
+	public boolean isReady() {
+		return closes.isFull();
+	}
+
+	@Override
+	public double getValue() {
+		return closes.isFull() ? sum / closes.capacity() : Double.NaN;
+	}
+
+	@Override
+	public Indicator newInstance() {
+		return new SimpleMovingAverage(closes.capacity());
+	}
+
+	@Override
+	public String toString() {
+		return "SMA(" + closes.capacity() + ")";
+	}
+}
@@ -0,0 +1,47 @@
+package com.angelbroking.smartapi.indicators;
+
+/**
+ * Session volume weighted average of the typical price (high + low + close) /
+ * 3, restarted at the first bar of each IST day.
+ */
+public class VolumeWeightedAveragePrice implements Indicator {
+
+	private static final long EXCHANGE_OFFSET_MILLIS = 19800000L;
+	private static final long DAY_MILLIS = 86400000L;
+
+	private long day = Long.MIN_VALUE;
+	private double priceVolume;
+	private long volume;
+
+	@Override
+	public void update(long time, double open, double high, double low, double close, long volume) {
+		long today = Math.floorDiv(time + EXCHANGE_OFFSET_MILLIS, DAY_MILLIS);
+		if (today != day) {
+			day = today;
+			priceVolume = 0;
+			this.volume = 0;
+		}
+		priceVolume += (high + low + close) / 3 * volume;
+		this.volume += volume;
+	}
+
+	@Override
+	public boolean isReady() {
+		return volume > 0;
+	}
+
+	@Override
+	public double getValue() {
+		return volume > 0 ? priceVolume / volume : Double.NaN;
+	}
+
+	@Override
+	public Indicator newInstance() {
+		return new VolumeWeightedAveragePrice();
+	}
+
+	@Override
+	public String toString() {
+		return "VWAP";
+	}
+}
@@ -0,0 +1,352 @@
+package com.angelbroking.smartapi.instruments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Futures and options of an instrument master grouped by underlying, expiry
+ * and strike, e.g. to pick the NIFTY calls and puts within five strikes of
+ * spot on the nearest expiry.
+ * 
+ * Each underlying, identified by its exchange segment and scrip master name,
+ * has its expiries in date order, and each expiry has its strikes in a sorted
+ * array with the call and put of every strike alongside, so strike lookups
+ * are binary searches. Strikes are the scrip master strikes divided by 100,
+ * which is rupees for NFO and BFO contracts.
+ * 
+ * <pre>
+ * DerivativesIndex index = new DerivativesIndex(master);
+ * DerivativesIndex.Expiry expiry = index.getNearestExpiry("NFO", "NIFTY", LocalDate.now().toEpochDay());
+ * int atm = expiry.indexOfAtm(ltp);
+ * for (int i = Math.max(atm - 5, 0); i &lt;= Math.min(atm + 5, expiry.size() - 1); i++) {
+ *     String call = master.getSymbol(expiry.getCall(i));
+ * }
+ * </pre>
+ * 
+ * The index is immutable and may be read from many threads.
+ */
+public class DerivativesIndex {
+
+	private static final Expiry[] NO_EXPIRIES = new Expiry[0];
+
+	private final InstrumentMaster master;
+	private final Map<String, Expiry[]> underlyings = new HashMap<String, Expiry[]>();
+
+	/**
+	 * Indexes the futures and options of a master.
+	 * 
+	 * @param master is the instrument master.
+	 */
+	public DerivativesIndex(InstrumentMaster master) {
+		this.master = master;
+		Map<String, TreeMap<Integer, ExpiryBuilder>> builders = new HashMap<String, TreeMap<Integer, ExpiryBuilder>>();
+		for (int i = 0; i < master.size(); i++) {
+			int expiryDay = master.getExpiryDay(i);
+			String type = master.getInstrumentType(i);
+			if (expiryDay < 0 || type.length() < 3) {
+				continue;
+			}
+			boolean future = type.startsWith("FUT");
+			if (!future && !type.startsWith("OPT")) {
+				continue;
+			}
+			String key = key(master.getExchange(i), master.getName(i));
+			TreeMap<Integer, ExpiryBuilder> expiries = builders.get(key);
+			if (expiries == null) {
+				expiries = new TreeMap<Integer, ExpiryBuilder>();
+				builders.put(key, expiries);
+			}
+			ExpiryBuilder builder = expiries.get(expiryDay);
+			if (builder == null) {
+				builder = new ExpiryBuilder();
+				expiries.put(expiryDay, builder);
+			}
+			if (future) {
+				if (builder.future < 0) {
+					builder.future = i;
+				}
+				continue;
+			}
+			String symbol = master.getSymbol(i);
+			boolean call = symbol.endsWith("CE");
+			if (!call && !symbol.endsWith("PE")) {
+				continue;
+			}
+			long strike = Math.round(master.getStrike(i));
+			int[] pair = builder.strikes.get(strike);
+			if (pair == null) {
+				pair = new int[] { -1, -1 };
+				builder.strikes.put(strike, pair);
+			}
+			pair[call ? 0 : 1] = i;
+		}
+		for (Map.Entry<String, TreeMap<Integer, ExpiryBuilder>> entry : builders.entrySet()) {
+			List<Expiry> expiries = new ArrayList<Expiry>();
+			for (Map.Entry<Integer, ExpiryBuilder> expiry : entry.getValue().entrySet()) {
+				expiries.add(expiry.getValue().build(expiry.getKey()));
+			}
+			underlyings.put(entry.getKey(), expiries.toArray(new Expiry[expiries.size()]));
+		}
+	}
+
+	public InstrumentMaster getMaster() {
+		return master;
+	}
+
+	/**
+	 * Returns the underlyings with derivatives on an exchange segment.
+	 * 
+	 * @param exchange is the exchange segment, e.g. "NFO".
+	 * @return names sorted alphabetically.
+	 */
+	public List<String> getUnderlyings(String exchange) {
+		List<String> names = new ArrayList<String>();
+		String prefix = exchange + "|";
+		for (String key : underlyings.keySet()) {
+			if (key.startsWith(prefix)) {
+				names.add(key.substring(prefix.length()));
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns the expiries of an underlying in date order.
+	 * 
+	 * @param exchange   is the exchange segment, e.g. "NFO".
+	 * @param underlying is the scrip master name, e.g. "NIFTY".
+	 * @return the expiries, empty if the underlying has no derivatives.
+	 */
+	public Expiry[] getExpiries(String exchange, String underlying) {
+		Expiry[] expiries = underlyings.get(key(exchange, underlying));
+		return expiries == null ? NO_EXPIRIES : expiries.clone();
+	}
+
+	/**
+	 * Returns an expiry of an underlying.
+	 * 
+	 * @param exchange   is the exchange segment, e.g. "NFO".
+	 * @param underlying is the scrip master name, e.g. "NIFTY".
+	 * @param expiryDay  is the expiry in days since the epoch.
+	 * @return the expiry, or null if absent.
+	 */
+	public Expiry getExpiry(String exchange, String underlying, int expiryDay) {
+		Expiry[] expiries = underlyings.get(key(exchange, underlying));
+		if (expiries == null) {
+			return null;
+		}
+		int i = search(expiries, expiryDay);
+		return i < expiries.length && expiries[i].expiryDay == expiryDay ? expiries[i] : null;
+	}
+
+	/**
+	 * Returns the first expiry of an underlying on or after a day, e.g. the
+	 * current week's options.
+	 * 
+	 * @param exchange   is the exchange segment, e.g. "NFO".
+	 * @param underlying is the scrip master name, e.g. "NIFTY".
+	 * @param day        is a day since the epoch, e.g. today.
+	 * @return the expiry, or null if none.
+	 */
+	public Expiry getNearestExpiry(String exchange, String underlying, long day) {
+		Expiry[] expiries = underlyings.get(key(exchange, underlying));
+		if (expiries == null) {
+			return null;
+		}
+		int i = search(expiries, (int) Math.min(day, Integer.MAX_VALUE));
+		return i < expiries.length ? expiries[i] : null;
+	}
+
+	/** Returns the index of the first expiry on or after a day. */
+	private static int search(Expiry[] expiries, int day) {
+		int low = 0;
+		int high = expiries.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (expiries[mid].expiryDay < day) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static String key(String exchange, String underlying) {
+		return exchange + "|" + underlying;
+	}
+
+	/**
+	 * The future and the strike ladder of one expiry of an underlying. Contracts
+	 * are master indices, -1 where absent.
+	 */
+	public static final class Expiry {
+
+		private final int expiryDay;
+		private final int future;
+		private final double[] strikes;
+		private final int[] calls;
+		private final int[] puts;
+
+		Expiry(int expiryDay, int future, double[] strikes, int[] calls, int[] puts) {
+			this.expiryDay = expiryDay;
+			this.future = future;
+			this.strikes = strikes;
+			this.calls = calls;
+			this.puts = puts;
+		}
+
+		/** Returns the expiry in days since the epoch. */
+		public int getExpiryDay() {
+			return expiryDay;
+		}
+
+		/** Returns the future of the expiry, or -1. */
+		public int getFuture() {
+			return future;
+		}
+
+		/** Returns the number of strikes. */
+		public int size() {
+			return strikes.length;
+		}
+
+		public double getStrike(int i) {
+			return strikes[i];
+		}
+
+		/** Returns the call at a strike, or -1. */
+		public int getCall(int i) {
+			return calls[i];
+		}
+
+		/** Returns the put at a strike, or -1. */
+		public int getPut(int i) {
+			return puts[i];
+		}
+
+		/**
+		 * Returns the position of a strike.
+		 * 
+		 * @param strike is the strike in rupees.
+		 * @return the position, or -(insertion point) - 1 if absent.
+		 */
+		public int indexOfStrike(double strike) {
+			return Arrays.binarySearch(strikes, strike);
+		}
+
+		/**
+		 * Returns the position of the strike nearest a price, the lower one on
+		 * a tie.
+		 * 
+		 * @param price is the price of the underlying, e.g. its LTP.
+		 * @return the position, or -1 if there are no strikes.
+		 */
+		public int indexOfAtm(double price) {
+			if (strikes.length == 0) {
+				return -1;
+			}
+			int i = fromIndex(price);
+			if (i == strikes.length) {
+				return i - 1;
+			}
+			if (i > 0 && price - strikes[i - 1] <= strikes[i] - price) {
+				return i - 1;
+			}
+			return i;
+		}
+
+		/**
+		 * Returns the position of the first strike at or above a price.
+		 * 
+		 * @param price is the lower bound in rupees.
+		 * @return a position between 0 and size().
+		 */
+		public int fromIndex(double price) {
+			int low = 0;
+			int high = strikes.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (strikes[mid] < price) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the position after the last strike at or below a price.
+		 * 
+		 * @param price is the upper bound in rupees.
+		 * @return a position between 0 and size().
+		 */
+		public int toIndex(double price) {
+			int low = 0;
+			int high = strikes.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (strikes[mid] <= price) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Copies the calls or puts of the strikes within n strikes of the money.
+		 * 
+		 * @param price is the price of the underlying, e.g. its LTP.
+		 * @param n     is the number of strikes each side of the money.
+		 * @param calls is true for calls, false for puts.
+		 * @param dst   receives the contracts in strike order, -1 where absent;
+		 *              2n + 1 entries are enough.
+		 * @return the number of contracts copied.
+		 */
+		public int around(double price, int n, boolean calls, int[] dst) {
+			int atm = indexOfAtm(price);
+			if (atm < 0) {
+				return 0;
+			}
+			int from = Math.max(atm - n, 0);
+			int to = Math.min(Math.min(atm + n + 1, strikes.length), from + dst.length);
+			System.arraycopy(calls ? this.calls : puts, from, dst, 0, to - from);
+			return to - from;
+		}
+
+		@Override
+		public String toString() {
+			return "Expiry [expiryDay=" + expiryDay + ", strikes=" + strikes.length
+					+ (strikes.length > 0 ? ", from=" + strikes[0] + ", to=" + strikes[strikes.length - 1] : "") + "]";
+		}
+	}
+
+	private static final class ExpiryBuilder {
+		final TreeMap<Long, int[]> strikes = new TreeMap<Long, int[]>();
+		int future = -1;
+
+		Expiry build(int expiryDay) {
+			int size = strikes.size();
+			double[] prices = new double[size];
+			int[] calls = new int[size];
+			int[] puts = new int[size];
+			int i = 0;
+			for (Map.Entry<Long, int[]> entry : strikes.entrySet()) {
+				prices[i] = entry.getKey() / 100.0;
+				calls[i] = entry.getValue()[0];
+				puts[i] = entry.getValue()[1];
+				i++;
+			}
+			return new Expiry(expiryDay, future, prices, calls, puts);
+		}
+	}
+}
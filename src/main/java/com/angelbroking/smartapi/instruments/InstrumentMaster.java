@@ -0,0 +1,618 @@
+package com.angelbroking.smartapi.instruments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.angelbroking.smartapi.models.Instrument;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Index of the scrip master, the list of every tradable contract with its
+ * token, trading symbol, lot size and so on.
+ * 
+ * The JSON file is streamed record by record into one compact buffer of fixed
+ * size records and deduplicated strings, never holding the JSON tree. The
+ * buffer is also the snapshot format, so a saved index is memory-mapped on
+ * the next start instead of parsed. Lookups by token go through a primitive
+ * map built on load, lookups by symbol binary search a sorted permutation of
+ * the records.
+ * 
+ * <pre>
+ * long magic | int count | int stringsLength | long created | 8 bytes reserved |
+ * count x record | int symbolOrder[count] | strings
+ * 
+ * record: int token | int exchange | int symbol | int name | int instrumentType |
+ *         int expiry | int expiryDay | int lotSize | double strike | double tickSize
+ * </pre>
+ * 
+ * String fields of a record are offsets into the strings section, where each
+ * string is stored once as a short length and its UTF-8 bytes. Expiry days
+ * are days since the epoch, or -1 for contracts without expiry.
+ * 
+ * Records are identified by their index from 0 to {@link #size()}. Tokens
+ * are only unique within an exchange, so lookups take both.
+ */
+public class InstrumentMaster {
+
+	public static final long MAGIC = 0x534d415254534352L;
+
+	private static final int HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 48;
+	private static final String MONTHS = "JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC";
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int orderOffset;
+	private final int stringsOffset;
+	private final IntIntHashMap firstByToken;
+	private final int[] nextByToken;
+	private final Map<Integer, String> interned = new HashMap<Integer, String>();
+
+	private InstrumentMaster(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+			throw new IOException("not an instrument snapshot");
+		}
+		this.buffer = buffer;
+		this.count = buffer.getInt(8);
+		this.orderOffset = HEADER_SIZE + count * RECORD_SIZE;
+		this.stringsOffset = orderOffset + count * 4;
+		if (buffer.limit() < stringsOffset + buffer.getInt(12)) {
+			throw new IOException("truncated instrument snapshot");
+		}
+		this.firstByToken = new IntIntHashMap(count, -1);
+		this.nextByToken = new int[count];
+		for (int i = count - 1; i >= 0; i--) {
+			int token = buffer.getInt(HEADER_SIZE + i * RECORD_SIZE);
+			nextByToken[i] = firstByToken.get(token);
+			firstByToken.put(token, i);
+		}
+	}
+
+	/**
+	 * Streams a scrip master JSON array into an index.
+	 * 
+	 * @param reader is the JSON text.
+	 * @return InstrumentMaster
+	 * @throws IOException if the text can't be read or isn't a scrip master.
+	 */
+	public static InstrumentMaster parse(Reader reader) throws IOException {
+		Builder builder = new Builder();
+		JsonReader json = new JsonReader(reader);
+		json.beginArray();
+		while (json.hasNext()) {
+			json.beginObject();
+			builder.begin();
+			while (json.hasNext()) {
+				String name = json.nextName();
+				if (json.peek() == JsonToken.NULL) {
+					json.nextNull();
+				} else {
+					builder.field(name, json.nextString());
+				}
+			}
+			json.endObject();
+			builder.end();
+		}
+		json.endArray();
+		return new InstrumentMaster(builder.build());
+	}
+
+	/**
+	 * Downloads and streams the scrip master.
+	 * 
+	 * @param client is the HTTP client, preferably one without a logging
+	 *               interceptor, which would hold the whole body.
+	 * @param url    is the scrip master URL.
+	 * @return InstrumentMaster
+	 * @throws IOException if the download fails.
+	 */
+	public static InstrumentMaster download(OkHttpClient client, String url) throws IOException {
+		Request request = new Request.Builder().url(url).build();
+		try (Response response = client.newCall(request).execute()) {
+			if (!response.isSuccessful()) {
+				throw new IOException("scrip master download failed with HTTP " + response.code());
+			}
+			return parse(response.body().charStream());
+		}
+	}
+
+	/**
+	 * Memory-maps a saved snapshot.
+	 * 
+	 * @param snapshot is a file written by {@link #save(File)}.
+	 * @return InstrumentMaster
+	 * @throws IOException if the file can't be read or isn't a snapshot.
+	 */
+	public static InstrumentMaster open(File snapshot) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r")) {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return new InstrumentMaster(buffer);
+		}
+	}
+
+	/**
+	 * Maps the snapshot if it was saved after a cutoff, otherwise downloads
+	 * the scrip master and replaces the snapshot. The cutoff is checked on the
+	 * header alone, so a stale snapshot is never mapped, and a corrupt one is
+	 * deleted before it is replaced.
+	 * 
+	 * @param snapshot  is the snapshot file.
+	 * @param notBefore is the oldest snapshot accepted in epoch milliseconds,
+	 *                  e.g. the start of today's session.
+	 * @param client    is the HTTP client.
+	 * @param url       is the scrip master URL.
+	 * @return InstrumentMaster
+	 * @throws IOException if the download or the snapshot fails.
+	 */
+	public static InstrumentMaster load(File snapshot, long notBefore, OkHttpClient client, String url)
+			throws IOException {
+		if (snapshot.isFile()) {
+			try {
+				if (readCreated(snapshot) >= notBefore) {
+					return open(snapshot);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				Files.deleteIfExists(snapshot.toPath());
+			}
+		}
+		download(client, url).save(snapshot);
+		return open(snapshot);
+	}
+
+	/**
+	 * Writes the index to a snapshot file, replacing it atomically.
+	 * 
+	 * @param snapshot is the snapshot file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void save(File snapshot) throws IOException {
+		File parent = snapshot.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("can't create snapshot directory " + parent);
+		}
+		Path temp = Files.createTempFile(parent.toPath(), snapshot.getName(), ".tmp");
+		ByteBuffer source = buffer.duplicate();
+		source.clear();
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (source.hasRemaining()) {
+					channel.write(source);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/** Reads the creation time from the header of a snapshot without mapping it. */
+	private static long readCreated(File snapshot) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					throw new IOException("not an instrument snapshot");
+				}
+			}
+		}
+		if (header.getLong(0) != MAGIC) {
+			throw new IOException("not an instrument snapshot");
+		}
+		return header.getLong(16);
+	}
+
+	/** Returns the number of instruments. */
+	public int size() {
+		return count;
+	}
+
+	/** Returns when the index was parsed, in epoch milliseconds. */
+	public long getCreated() {
+		return buffer.getLong(16);
+	}
+
+	/**
+	 * Returns the index of an instrument by token.
+	 * 
+	 * @param exchange is the exchange segment, e.g. "NFO".
+	 * @param token    is the instrument token.
+	 * @return the index, or -1 if absent.
+	 */
+	public int indexOf(String exchange, int token) {
+		for (int i = firstByToken.get(token); i >= 0; i = nextByToken[i]) {
+			if (getExchange(i).equals(exchange)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of an instrument by token.
+	 * 
+	 * @param exchange    is the exchange segment, e.g. "NFO".
+	 * @param symbolToken is the instrument token.
+	 * @return the index, or -1 if absent.
+	 */
+	public int indexOf(String exchange, String symbolToken) {
+		try {
+			return indexOf(exchange, Integer.parseInt(symbolToken));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the index of an instrument by trading symbol.
+	 * 
+	 * @param exchange      is the exchange segment, e.g. "NSE".
+	 * @param tradingSymbol is the trading symbol, e.g. "SBIN-EQ".
+	 * @return the index, or -1 if absent.
+	 */
+	public int indexOfSymbol(String exchange, String tradingSymbol) {
+		byte[] key = tradingSymbol.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(field(bySymbol(mid), 8), key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		for (int i = low; i < count; i++) {
+			int index = bySymbol(i);
+			if (compare(field(index, 8), key) != 0) {
+				break;
+			}
+			if (getExchange(index).equals(exchange)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the token of a trading symbol, as placeOrder and getLTP take it.
+	 * 
+	 * @param exchange      is the exchange segment, e.g. "NSE".
+	 * @param tradingSymbol is the trading symbol, e.g. "SBIN-EQ".
+	 * @return the token, or null if absent.
+	 */
+	public String getSymbolToken(String exchange, String tradingSymbol) {
+		int index = indexOfSymbol(exchange, tradingSymbol);
+		return index < 0 ? null : Integer.toString(getToken(index));
+	}
+
+	/**
+	 * Returns the trading symbol of a token.
+	 * 
+	 * @param exchange    is the exchange segment, e.g. "NSE".
+	 * @param symbolToken is the instrument token.
+	 * @return the trading symbol, or null if absent.
+	 */
+	public String getTradingSymbol(String exchange, String symbolToken) {
+		int index = indexOf(exchange, symbolToken);
+		return index < 0 ? null : getSymbol(index);
+	}
+
+	/**
+	 * Returns the index of the i-th instrument in trading symbol order.
+	 * 
+	 * @param i is between 0 and size().
+	 * @return int
+	 */
+	public int bySymbol(int i) {
+		return buffer.getInt(orderOffset + i * 4);
+	}
+
+	public int getToken(int index) {
+		return buffer.getInt(record(index));
+	}
+
+	public String getExchange(int index) {
+		return intern(field(index, 4));
+	}
+
+	public String getSymbol(int index) {
+		return string(field(index, 8));
+	}
+
+	public String getName(int index) {
+		return intern(field(index, 12));
+	}
+
+	public String getInstrumentType(int index) {
+		return intern(field(index, 16));
+	}
+
+	/** Returns the expiry as in the scrip master, e.g. "26NOV2026", or "". */
+	public String getExpiry(int index) {
+		return intern(field(index, 20));
+	}
+
+	/** Returns the expiry in days since the epoch, or -1 if none. */
+	public int getExpiryDay(int index) {
+		return buffer.getInt(record(index) + 24);
+	}
+
+	public int getLotSize(int index) {
+		return buffer.getInt(record(index) + 28);
+	}
+
+	/** Returns the strike as in the scrip master, or -1 if none. */
+	public double getStrike(int index) {
+		return buffer.getDouble(record(index) + 32);
+	}
+
+	public double getTickSize(int index) {
+		return buffer.getDouble(record(index) + 40);
+	}
+
+	/**
+	 * Returns an instrument as a model object.
+	 * 
+	 * @param index is the index of the instrument.
+	 * @return Instrument
+	 */
+	public Instrument get(int index) {
+		Instrument instrument = new Instrument();
+		instrument.token = Integer.toString(getToken(index));
+		instrument.symbol = getSymbol(index);
+		instrument.name = getName(index);
+		instrument.expiry = getExpiry(index);
+		instrument.strike = getStrike(index);
+		instrument.lotSize = getLotSize(index);
+		instrument.instrumentType = getInstrumentType(index);
+		instrument.exchange = getExchange(index);
+		instrument.tickSize = getTickSize(index);
+		return instrument;
+	}
+
+	@Override
+	public String toString() {
+		return "InstrumentMaster [size=" + count + ", created=" + getCreated() + "]";
+	}
+
+	private int record(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+		}
+		return HEADER_SIZE + index * RECORD_SIZE;
+	}
+
+	private int field(int index, int offset) {
+		return buffer.getInt(record(index) + offset);
+	}
+
+	/** Returns a low-cardinality string, decoded once. */
+	private synchronized String intern(int offset) {
+		String value = interned.get(offset);
+		if (value == null) {
+			value = string(offset);
+			interned.put(offset, value);
+		}
+		return value;
+	}
+
+	private String string(int offset) {
+		int position = stringsOffset + offset;
+		byte[] bytes = new byte[buffer.getShort(position) & 0xffff];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(position + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Compares a stored string with UTF-8 bytes, unsigned byte by byte. */
+	private int compare(int offset, byte[] key) {
+		int position = stringsOffset + offset;
+		int length = buffer.getShort(position) & 0xffff;
+		int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			int difference = (buffer.get(position + 2 + i) & 0xff) - (key[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - key.length;
+	}
+
+	static int parseExpiryDay(String expiry) {
+		if (expiry.length() != 9) {
+			return -1;
+		}
+		int month = MONTHS.indexOf(expiry.substring(2, 5).toUpperCase());
+		if (month < 0 || month % 3 != 0) {
+			return -1;
+		}
+		try {
+			int day = Integer.parseInt(expiry.substring(0, 2));
+			int year = Integer.parseInt(expiry.substring(5));
+			return (int) LocalDate.of(year, month / 3 + 1, day).toEpochDay();
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/** Accumulates records and strings while parsing. */
+	private static final class Builder {
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+		private byte[] stringBytes = new byte[1 << 20];
+		private int stringsLength;
+		private int[] ints = new int[1 << 16];
+		private double[] doubles = new double[1 << 14];
+		private String[] symbols = new String[1 << 13];
+		private int count;
+		private String token;
+		private String exchange;
+		private String symbol;
+		private String name;
+		private String instrumentType;
+		private String expiry;
+		private String strike;
+		private String lotSize;
+		private String tickSize;
+
+		void begin() {
+			token = exchange = symbol = name = instrumentType = expiry = strike = lotSize = tickSize = null;
+		}
+
+		void field(String field, String value) {
+			switch (field) {
+			case "token":
+				token = value;
+				break;
+			case "exch_seg":
+				exchange = value;
+				break;
+			case "symbol":
+				symbol = value;
+				break;
+			case "name":
+				name = value;
+				break;
+			case "instrumenttype":
+				instrumentType = value;
+				break;
+			case "expiry":
+				expiry = value;
+				break;
+			case "strike":
+				strike = value;
+				break;
+			case "lotsize":
+				lotSize = value;
+				break;
+			case "tick_size":
+				tickSize = value;
+				break;
+			default:
+				break;
+			}
+		}
+
+		void end() {
+			int tokenValue;
+			try {
+				tokenValue = Integer.parseInt(token);
+			} catch (NumberFormatException e) {
+				return;
+			}
+			if (exchange == null || symbol == null) {
+				return;
+			}
+			if ((count + 1) * 8 > ints.length) {
+				ints = Arrays.copyOf(ints, ints.length * 2);
+				doubles = Arrays.copyOf(doubles, doubles.length * 2);
+				symbols = Arrays.copyOf(symbols, symbols.length * 2);
+			}
+			int i = count * 8;
+			ints[i] = tokenValue;
+			ints[i + 1] = offset(exchange);
+			ints[i + 2] = offset(symbol);
+			ints[i + 3] = offset(name);
+			ints[i + 4] = offset(instrumentType);
+			ints[i + 5] = offset(expiry);
+			ints[i + 6] = expiry == null ? -1 : parseExpiryDay(expiry);
+			ints[i + 7] = (int) number(lotSize, 0);
+			doubles[count * 2] = number(strike, -1);
+			doubles[count * 2 + 1] = number(tickSize, 0);
+			symbols[count] = symbol + '\0' + exchange;
+			count++;
+		}
+
+		ByteBuffer build() {
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			// same order as the unsigned UTF-8 comparison of lookups for the
+			// ASCII symbols of the scrip master
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return symbols[a].compareTo(symbols[b]);
+				}
+			});
+			int orderOffset = HEADER_SIZE + count * RECORD_SIZE;
+			int stringsOffset = orderOffset + count * 4;
+			ByteBuffer buffer = ByteBuffer.allocate(stringsOffset + stringsLength).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putLong(0, MAGIC);
+			buffer.putInt(8, count);
+			buffer.putInt(12, stringsLength);
+			buffer.putLong(16, System.currentTimeMillis());
+			for (int r = 0; r < count; r++) {
+				int position = HEADER_SIZE + r * RECORD_SIZE;
+				for (int f = 0; f < 8; f++) {
+					buffer.putInt(position + f * 4, ints[r * 8 + f]);
+				}
+				buffer.putDouble(position + 32, doubles[r * 2]);
+				buffer.putDouble(position + 40, doubles[r * 2 + 1]);
+				buffer.putInt(orderOffset + r * 4, order[r]);
+			}
+			for (int i = 0; i < stringsLength; i++) {
+				buffer.put(stringsOffset + i, stringBytes[i]);
+			}
+			return buffer;
+		}
+
+		private int offset(String value) {
+			if (value == null) {
+				value = "";
+			}
+			Integer offset = strings.get(value);
+			if (offset == null) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				int length = Math.min(bytes.length, 0xffff);
+				if (stringsLength + 2 + length > stringBytes.length) {
+					stringBytes = Arrays.copyOf(stringBytes, Math.max(stringBytes.length * 2, stringsLength + 2 + length));
+				}
+				offset = stringsLength;
+				stringBytes[stringsLength] = (byte) length;
+				stringBytes[stringsLength + 1] = (byte) (length >>> 8);
+				System.arraycopy(bytes, 0, stringBytes, stringsLength + 2, length);
+				stringsLength += 2 + length;
+				strings.put(value, offset);
+			}
+			return offset;
+		}
+
+		private static double number(String value, double missing) {
+			if (value == null || value.isEmpty()) {
+				return missing;
+			}
+			try {
+				return Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				return missing;
+			}
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package com.angelbroking.smartapi.instruments;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.angelbroking.smartapi.models.Instrument;
+
+/**
+ * Type-ahead search over an instrument master, e.g. "nifty 24 oct 25000 ce"
+ * or "banknifty fut".
+ * 
+ * Every instrument is indexed under the words of its trading symbol and name,
+ * its exchange, and the day, month and year of its expiry and its strike in
+ * rupees. Words split at letters and digits, so "25000CE" is two words. The
+ * words of all instruments form one sorted dictionary, so the words starting
+ * with a prefix are a range of word ids, and each instrument keeps its sorted
+ * word ids, so checking a prefix against an instrument is one binary search.
+ * 
+ * A query is split the same way and an instrument matches when every query
+ * word is a prefix of one of its words, or, for alphabetic query words which
+ * prefix nothing, within one edit of one of its alphabetic words. Candidates
+ * come from the rarest query word; exact words rank above prefixes above
+ * corrections, and ties go to shorter symbols and then nearer expiries.
+ * 
+ * Instruments are numbered internally in that tie order, so every word's
+ * instrument list is best first and scanning a list stops as soon as its
+ * remaining instruments can't displace the matches already found. Broad
+ * queries such as "nifty" then cost about k candidates rather than every
+ * option contract.
+ * 
+ * The index is immutable and may be searched from many threads.
+ */
+public class InstrumentSearch {
+
+	private static final int EXACT = 3;
+	private static final int PREFIX = 2;
+	private static final int FUZZY = 1;
+	private static final int MIN_FUZZY_LENGTH = 3;
+	private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT",
+			"NOV", "DEC" };
+
+	private final InstrumentMaster master;
+	private final int[] masterIndex;
+	private final String[] words;
+	private final int[] postingStart;
+	private final int[] postings;
+	private final int[] wordStart;
+	private final int[] instrumentWords;
+	private final Map<String, int[]> deletions;
+
+	/**
+	 * Indexes every instrument of a master.
+	 * 
+	 * @param master is the instrument master.
+	 */
+	public InstrumentSearch(InstrumentMaster master) {
+		this.master = master;
+		int count = master.size();
+		masterIndex = rankOrder(master);
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> dictionary = new ArrayList<String>();
+		int[][] perInstrument = new int[count][];
+		List<String> terms = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			int index = masterIndex[i];
+			terms.clear();
+			split(master.getSymbol(index), terms);
+			split(master.getName(index), terms);
+			terms.add(master.getExchange(index));
+			int day = master.getExpiryDay(index);
+			if (day >= 0) {
+				LocalDate expiry = LocalDate.ofEpochDay(day);
+				terms.add(Integer.toString(expiry.getDayOfMonth()));
+				terms.add(String.format("%02d", expiry.getDayOfMonth()));
+				terms.add(MONTHS[expiry.getMonthValue() - 1]);
+				terms.add(Integer.toString(expiry.getYear()));
+				terms.add(Integer.toString(expiry.getYear() % 100));
+			}
+			double strike = master.getStrike(index);
+			if (strike > 0) {
+				terms.add(strike(strike / 100));
+			}
+			int[] wordIds = new int[terms.size()];
+			int distinct = 0;
+			for (String term : terms) {
+				if (term.isEmpty()) {
+					continue;
+				}
+				Integer id = ids.get(term);
+				if (id == null) {
+					id = dictionary.size();
+					ids.put(term, id);
+					dictionary.add(term);
+				}
+				wordIds[distinct++] = id;
+			}
+			perInstrument[i] = Arrays.copyOf(wordIds, distinct);
+		}
+
+		// renumber the words in sorted order so prefixes are id ranges
+		words = dictionary.toArray(new String[dictionary.size()]);
+		Arrays.sort(words);
+		int[] rank = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			rank[ids.get(words[i])] = i;
+		}
+		int[] frequency = new int[words.length + 1];
+		wordStart = new int[count + 1];
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			int[] wordIds = perInstrument[i];
+			for (int j = 0; j < wordIds.length; j++) {
+				wordIds[j] = rank[wordIds[j]];
+			}
+			Arrays.sort(wordIds);
+			int distinct = 0;
+			for (int j = 0; j < wordIds.length; j++) {
+				if (distinct == 0 || wordIds[j] != wordIds[distinct - 1]) {
+					wordIds[distinct++] = wordIds[j];
+					frequency[wordIds[j] + 1]++;
+				}
+			}
+			perInstrument[i] = distinct == wordIds.length ? wordIds : Arrays.copyOf(wordIds, distinct);
+			total += distinct;
+			wordStart[i + 1] = total;
+		}
+		instrumentWords = new int[total];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(perInstrument[i], 0, instrumentWords, wordStart[i], perInstrument[i].length);
+		}
+		postingStart = new int[words.length + 1];
+		for (int i = 0; i < words.length; i++) {
+			postingStart[i + 1] = postingStart[i] + frequency[i + 1];
+		}
+		postings = new int[total];
+		int[] next = Arrays.copyOf(postingStart, words.length);
+		for (int i = 0; i < count; i++) {
+			for (int j = wordStart[i]; j < wordStart[i + 1]; j++) {
+				postings[next[instrumentWords[j]]++] = i;
+			}
+		}
+
+		// deletion neighbourhoods of alphabetic words for one-edit corrections
+		Map<String, List<Integer>> neighbours = new HashMap<String, List<Integer>>();
+		for (int id = 0; id < words.length; id++) {
+			String word = words[id];
+			if (word.length() >= MIN_FUZZY_LENGTH && Character.isLetter(word.charAt(0))) {
+				addNeighbour(neighbours, word, id);
+				for (int d = 0; d < word.length(); d++) {
+					addNeighbour(neighbours, delete(word, d), id);
+				}
+			}
+		}
+		deletions = new HashMap<String, int[]>(neighbours.size() * 2);
+		for (Map.Entry<String, List<Integer>> entry : neighbours.entrySet()) {
+			List<Integer> list = entry.getValue();
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = list.get(i);
+			}
+			deletions.put(entry.getKey(), array);
+		}
+	}
+
+	/**
+	 * Returns the best matches of a query.
+	 * 
+	 * @param query is free text, e.g. "NIFTY 24 OCT 25000 CE".
+	 * @param k     is the largest number of matches returned.
+	 * @return the instruments, best first, with their symbol and token.
+	 */
+	public List<Instrument> search(String query, int k) {
+		int[] indices = new int[k];
+		int found = search(query, indices);
+		List<Instrument> instruments = new ArrayList<Instrument>(found);
+		for (int i = 0; i < found; i++) {
+			instruments.add(master.get(indices[i]));
+		}
+		return instruments;
+	}
+
+	/**
+	 * Finds the best matches of a query without creating instruments.
+	 * 
+	 * @param query is free text, e.g. "NIFTY 24 OCT 25000 CE".
+	 * @param dst   receives the master indices of the matches, best first; its
+	 *              length is the largest number of matches.
+	 * @return the number of matches.
+	 */
+	public int search(String query, int[] dst) {
+		List<String> tokens = new ArrayList<String>();
+		split(query, tokens);
+		if (tokens.isEmpty() || dst.length == 0) {
+			return 0;
+		}
+		Term[] terms = new Term[tokens.size()];
+		Term rarest = null;
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = resolve(tokens.get(i));
+			if (terms[i].postings == 0) {
+				return 0;
+			}
+			if (rarest == null || terms[i].postings < rarest.postings) {
+				rarest = terms[i];
+			}
+		}
+
+		int others = 0;
+		for (Term term : terms) {
+			others += term.best();
+		}
+		others -= rarest.best();
+
+		int[] top = new int[dst.length];
+		int[] scores = new int[dst.length];
+		int size = 0;
+		for (int r = 0; r <= rarest.fuzzy.length; r++) {
+			int from = r == 0 ? rarest.from : rarest.fuzzy[r - 1];
+			int to = r == 0 ? rarest.to : from + 1;
+			for (int word = from; word < to; word++) {
+				int limit = others + (r > 0 ? FUZZY : word == rarest.exact ? EXACT : PREFIX);
+				for (int p = postingStart[word]; p < postingStart[word + 1]; p++) {
+					int instrument = postings[p];
+					if (size == top.length && (scores[size - 1] > limit
+							|| (scores[size - 1] == limit && top[size - 1] < instrument))) {
+						// the rest of this word's instruments rank lower still
+						break;
+					}
+					int score = score(instrument, terms);
+					if (score > 0) {
+						size = insert(top, scores, size, instrument, score);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			dst[i] = masterIndex[top[i]];
+		}
+		return size;
+	}
+
+	/** Returns the number of distinct words indexed. */
+	public int getWordCount() {
+		return words.length;
+	}
+
+	private Term resolve(String token) {
+		Term term = new Term();
+		term.from = lowerBound(token);
+		term.to = lowerBound(token + Character.MAX_VALUE);
+		term.exact = term.from < words.length && words[term.from].equals(token) ? term.from : -1;
+		term.postings = postingStart[term.to] - postingStart[term.from];
+		term.fuzzy = new int[0];
+		if (term.postings == 0 && token.length() >= MIN_FUZZY_LENGTH && Character.isLetter(token.charAt(0))) {
+			term.fuzzy = corrections(token);
+			for (int id : term.fuzzy) {
+				term.postings += postingStart[id + 1] - postingStart[id];
+			}
+		}
+		return term;
+	}
+
+	/** Returns the ids of the words within one edit of a token. */
+	private int[] corrections(String token) {
+		int[] found = new int[8];
+		int size = 0;
+		for (int d = -1; d < token.length(); d++) {
+			int[] ids = deletions.get(d < 0 ? token : delete(token, d));
+			if (ids == null) {
+				continue;
+			}
+			for (int id : ids) {
+				if (contains(found, size, id) || !withinOneEdit(token, words[id])) {
+					continue;
+				}
+				if (size == found.length) {
+					found = Arrays.copyOf(found, size * 2);
+				}
+				found[size++] = id;
+			}
+		}
+		Arrays.sort(found, 0, size);
+		return Arrays.copyOf(found, size);
+	}
+
+	/** Returns the score of an instrument, or 0 if a term doesn't match it. */
+	private int score(int instrument, Term[] terms) {
+		int start = wordStart[instrument];
+		int end = wordStart[instrument + 1];
+		int score = 0;
+		for (Term term : terms) {
+			int i = Arrays.binarySearch(instrumentWords, start, end, term.from);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			if (i < end && instrumentWords[i] < term.to) {
+				score += instrumentWords[i] == term.exact ? EXACT : PREFIX;
+				continue;
+			}
+			boolean corrected = false;
+			for (int id : term.fuzzy) {
+				if (Arrays.binarySearch(instrumentWords, start, end, id) >= 0) {
+					corrected = true;
+					break;
+				}
+			}
+			if (!corrected) {
+				return 0;
+			}
+			score += FUZZY;
+		}
+		return score;
+	}
+
+	/** Inserts a match into the top matches kept in rank order. */
+	private int insert(int[] top, int[] scores, int size, int instrument, int score) {
+		for (int i = 0; i < size; i++) {
+			if (top[i] == instrument) {
+				return size;
+			}
+		}
+		int position = size;
+		while (position > 0 && better(instrument, score, top[position - 1], scores[position - 1])) {
+			position--;
+		}
+		if (position >= top.length) {
+			return size;
+		}
+		int last = Math.min(size, top.length - 1);
+		System.arraycopy(top, position, top, position + 1, last - position);
+		System.arraycopy(scores, position, scores, position + 1, last - position);
+		top[position] = instrument;
+		scores[position] = score;
+		return last + 1;
+	}
+
+	private static boolean better(int a, int scoreA, int b, int scoreB) {
+		return scoreA != scoreB ? scoreA > scoreB : a < b;
+	}
+
+	/** Returns the master indices ordered by symbol length, expiry and index. */
+	private static int[] rankOrder(InstrumentMaster master) {
+		final int count = master.size();
+		final long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			long length = Math.min(master.getSymbol(i).length(), 0x7fff);
+			long expiry = master.getExpiryDay(i) + 1L;
+			keys[i] = length << 48 | (expiry & 0xffffL) << 32 | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = words.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (words[mid].compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/** Splits text into upper-case words at non-alphanumerics and letter-digit changes. */
+	static void split(String text, List<String> words) {
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? Character.toUpperCase(text.charAt(i)) : ' ';
+			boolean alphanumeric = c < 128 && Character.isLetterOrDigit(c);
+			if (start >= 0 && (!alphanumeric || Character.isDigit(c) != Character.isDigit(text.charAt(i - 1)))) {
+				words.add(text.substring(start, i).toUpperCase());
+				start = -1;
+			}
+			if (alphanumeric && start < 0) {
+				start = i;
+			}
+		}
+	}
+
+	private static String strike(double rupees) {
+		long whole = (long) rupees;
+		return whole == rupees ? Long.toString(whole) : Double.toString(rupees);
+	}
+
+	private static String delete(String word, int index) {
+		return word.substring(0, index) + word.substring(index + 1);
+	}
+
+	private static void addNeighbour(Map<String, List<Integer>> neighbours, String key, int id) {
+		List<Integer> ids = neighbours.get(key);
+		if (ids == null) {
+			ids = new ArrayList<Integer>(1);
+			neighbours.put(key, ids);
+		}
+		if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+			ids.add(id);
+		}
+	}
+
+	private static boolean contains(int[] values, int size, int value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns whether two words differ by one insertion, deletion, substitution or transposition. */
+	private static boolean withinOneEdit(String a, String b) {
+		if (Math.abs(a.length() - b.length()) > 1) {
+			return false;
+		}
+		int i = 0;
+		while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		if (a.length() == b.length()) {
+			if (a.regionMatches(i + 1, b, i + 1, a.length() - i - 1)) {
+				return true;
+			}
+			return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+					&& a.regionMatches(i + 2, b, i + 2, a.length() - i - 2);
+		}
+		String longer = a.length() > b.length() ? a : b;
+		String shorter = longer == a ? b : a;
+		return longer.regionMatches(i + 1, shorter, i, shorter.length() - i);
+	}
+
+	/** A query word resolved to the word ids it matches. */
+	private static final class Term {
+		int from;
+		int to;
+		int exact;
+		int[] fuzzy;
+		int postings;
+
+		/** Returns the most a match of this term can score. */
+		int best() {
+			return exact >= 0 ? EXACT : to > from ? PREFIX : FUZZY;
+		}
+	}
+}
@@ -22,25 +22,28 @@ public class Gtt {
 	public String productType;
 
 	@SerializedName("price")
-	public Integer price;
+	public Double price;
 
-	@SerializedName("quantity")
+	@SerializedName(value = "quantity", alternate = "qty")
 	public Integer quantity;
 
 	@SerializedName("triggerprice")
-	public Integer triggerPrice;
+	public Double triggerPrice;
 
 	@SerializedName("disclosedqty")
 	public Integer disclosedQty;
 
 	@SerializedName("timeperiod")
 	public Integer timePeriod;
+
+	@SerializedName("status")
+	public String status;
 	
 	@Override
 	public String toString() {
 		return "Gtt [id=" + id + ", tradingSymbol=" + tradingSymbol + ", symbolToken="
 				+ symbolToken + ", exchange=" + exchange + ", transactionType=" + transactionType + ", productType=" + productType
 				+ ", price=" + price + ", quantity=" + quantity + ", triggerPrice=" + triggerPrice + ", disclosedQty=" + disclosedQty
-				+ ", timePeriod=" + timePeriod + "]";
+				+ ", timePeriod=" + timePeriod + ", status=" + status + "]";
 	}
 }
@@ -0,0 +1,35 @@
+package com.angelbroking.smartapi.models;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * A contract of the scrip master. Strikes and tick sizes are as in the file,
+ * in paise for NSE and NFO contracts.
+ */
+public class Instrument {
+	@SerializedName("token")
+	public String token;
+	@SerializedName("symbol")
+	public String symbol;
+	@SerializedName("name")
+	public String name;
+	@SerializedName("expiry")
+	public String expiry;
+	@SerializedName("strike")
+	public double strike;
+	@SerializedName("lotsize")
+	public int lotSize;
+	@SerializedName("instrumenttype")
+	public String instrumentType;
+	@SerializedName("exch_seg")
+	public String exchange;
+	@SerializedName("tick_size")
+	public double tickSize;
+
+	@Override
+	public String toString() {
+		return "Instrument [token=" + token + ", symbol=" + symbol + ", name=" + name + ", expiry=" + expiry
+				+ ", strike=" + strike + ", lotSize=" + lotSize + ", instrumentType=" + instrumentType + ", exchange="
+				+ exchange + ", tickSize=" + tickSize + "]";
+	}
+}
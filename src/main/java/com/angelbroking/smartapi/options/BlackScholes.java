@@ -0,0 +1,149 @@
+package com.angelbroking.smartapi.options;
+
+/**
+ * Black-Scholes prices and implied volatilities of European options without
+ * dividends.
+ * 
+ * Times are in years, rates and volatilities are annual and continuously
+ * compounded, e.g. 0.07 and 0.15.
+ */
+public final class BlackScholes {
+
+	/** Lowest volatility the solver returns. */
+	public static final double MIN_VOLATILITY = 1e-4;
+	/** Highest volatility the solver returns. */
+	public static final double MAX_VOLATILITY = 5;
+
+	private static final double SQRT_2PI = 2.506628274631000502;
+	private static final int MAX_ITERATIONS = 64;
+
+	private BlackScholes() {
+	}
+
+	/**
+	 * Returns the price of an option.
+	 * 
+	 * @param call       is true for a call, false for a put.
+	 * @param spot       is the price of the underlying.
+	 * @param strike     is the strike.
+	 * @param time       is the time to expiry in years.
+	 * @param rate       is the risk-free rate.
+	 * @param volatility is the volatility.
+	 * @return double
+	 */
+	public static double price(boolean call, double spot, double strike, double time, double rate,
+			double volatility) {
+		double discount = Math.exp(-rate * time);
+		if (time <= 0 || volatility <= 0) {
+			return Math.max(call ? spot - strike * discount : strike * discount - spot, 0);
+		}
+		double deviation = volatility * Math.sqrt(time);
+		double d1 = (Math.log(spot / strike) + (rate + volatility * volatility / 2) * time) / deviation;
+		double d2 = d1 - deviation;
+		return call ? spot * cdf(d1) - strike * discount * cdf(d2) : strike * discount * cdf(-d2) - spot * cdf(-d1);
+	}
+
+	/**
+	 * Returns the volatility at which an option's price matches.
+	 * 
+	 * Newton steps on vega, starting from the guess, are kept within a bracket
+	 * of the root that shrinks with every evaluation; a step leaving the
+	 * bracket, or a vanishing vega deep in or out of the money, falls back to
+	 * bisection, so the solver always converges. A guess near the answer, such
+	 * as the last volatility of the same contract, usually needs two or three
+	 * evaluations.
+	 * 
+	 * @param call   is true for a call, false for a put.
+	 * @param price  is the option's price.
+	 * @param spot   is the price of the underlying.
+	 * @param strike is the strike.
+	 * @param time   is the time to expiry in years.
+	 * @param rate   is the risk-free rate.
+	 * @param guess  is the starting volatility, or NaN for none.
+	 * @return the implied volatility, or NaN if the price is outside the
+	 *         arbitrage bounds.
+	 */
+	public static double impliedVolatility(boolean call, double price, double spot, double strike, double time,
+			double rate, double guess) {
+		if (time <= 0 || price <= 0 || spot <= 0 || strike <= 0) {
+			return Double.NaN;
+		}
+		double discounted = strike * Math.exp(-rate * time);
+		double intrinsic = Math.max(call ? spot - discounted : discounted - spot, 0);
+		double upper = call ? spot : discounted;
+		if (price <= intrinsic || price >= upper) {
+			return Double.NaN;
+		}
+		double low = MIN_VOLATILITY;
+		double high = MAX_VOLATILITY;
+		double volatility = guess > low && guess < high ? guess
+				: Math.min(Math.max(Math.sqrt(2 * Math.PI / time) * price / spot, 0.05), 1);
+		double sqrtTime = Math.sqrt(time);
+		double tolerance = 1e-10 * Math.max(price, 1e-4);
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			double deviation = volatility * sqrtTime;
+			double d1 = (Math.log(spot / strike) + (rate + volatility * volatility / 2) * time) / deviation;
+			double d2 = d1 - deviation;
+			double model = call ? spot * cdf(d1) - discounted * cdf(d2) : discounted * cdf(-d2) - spot * cdf(-d1);
+			double difference = model - price;
+			if (Math.abs(difference) < tolerance) {
+				return volatility;
+			}
+			if (difference > 0) {
+				high = volatility;
+			} else {
+				low = volatility;
+			}
+			double vega = spot * pdf(d1) * sqrtTime;
+			double next = vega > 1e-12 ? volatility - difference / vega : Double.NaN;
+			volatility = next > low && next < high ? next : (low + high) / 2;
+			if (high - low < 1e-12) {
+				return volatility;
+			}
+		}
+		return volatility;
+	}
+
+	/** Returns the standard normal density. */
+	public static double pdf(double x) {
+		return Math.exp(-x * x / 2) / SQRT_2PI;
+	}
+
+	/**
+	 * Returns the standard normal distribution function, accurate to double
+	 * precision (Hart's algorithm as given by West).
+	 */
+	public static double cdf(double x) {
+		double z = Math.abs(x);
+		double tail;
+		if (z > 37) {
+			tail = 0;
+		} else {
+			double e = Math.exp(-z * z / 2);
+			if (z < 7.07106781186547) {
+				double n = 3.52624965998911e-02 * z + 0.700383064443688;
+				n = n * z + 6.37396220353165;
+				n = n * z + 33.912866078383;
+				n = n * z + 112.079291497871;
+				n = n * z + 221.213596169931;
+				n = n * z + 220.206867912376;
+				double d = 8.83883476483184e-02 * z + 1.75566716318264;
+				d = d * z + 16.064177579207;
+				d = d * z + 86.7807322029461;
+				d = d * z + 296.564248779674;
+				d = d * z + 637.333633378831;
+				d = d * z + 793.826512519948;
+				d = d * z + 440.413735824752;
+				tail = e * n / d;
+			} else {
+				double d = z + 0.65;
+				d = z + 4 / d;
+				d = z + 3 / d;
+				d = z + 2 / d;
+				d = z + 1 / d;
+				tail = e / d / SQRT_2PI;
+			}
+		}
+		return x > 0 ? 1 - tail : tail;
+	}
+}
@@ -0,0 +1,388 @@
+package com.angelbroking.smartapi.options;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.angelbroking.smartapi.feed.OnTick;
+import com.angelbroking.smartapi.feed.Tick;
+import com.angelbroking.smartapi.instruments.DerivativesIndex;
+import com.angelbroking.smartapi.instruments.InstrumentMaster;
+import com.angelbroking.smartapi.utils.IntIntHashMap;
+
+/**
+ * Live implied volatilities and Greeks of every option of one expiry of an
+ * underlying.
+ * 
+ * Ticks of the underlying and the options update the inputs, marking the
+ * contracts whose inputs changed: a new option price marks its contract, a
+ * new spot marks them all. {@link #recompute()} then solves only the marked
+ * contracts, in fork-join batches across cores when there are many, each
+ * solve starting from the contract's last volatility. Inputs and outputs are
+ * primitive arrays indexed by contract position.
+ * 
+ * Register the chain for its tokens, e.g. on a TickBus with
+ * {@code bus.addTickListener("chain", chain, chain.getTokens())}, and call
+ * recompute after each underlying tick or on a timer. Time to expiry is
+ * taken at each recompute; call {@link #invalidate()} now and then so quiet
+ * contracts decay too.
+ * 
+ * Greeks are per unit of the underlying: vega per volatility point and theta
+ * per calendar day.
+ */
+public class OptionChain implements OnTick {
+
+	private static final long DAY_MILLIS = 86400000L;
+	private static final double YEAR_MILLIS = 365 * 86400000.0;
+	// expiry at 15:30 IST, in milliseconds after midnight UTC
+	private static final long EXPIRY_TIME_MILLIS = (15 * 60 + 30) * 60000L - 19800000L;
+	private static final int BATCH_SIZE = 128;
+
+	private final int underlyingToken;
+	private final long expiryMillis;
+	private final double rate;
+	private final int size;
+	private final int[] tokens;
+	private final int[] masterIndices;
+	private final boolean[] calls;
+	private final double[] strikes;
+	private final IntIntHashMap positions;
+
+	// inputs, guarded by this
+	private double spot = Double.NaN;
+	private final double[] prices;
+	private final boolean[] dirty;
+	private final int[] dirtyList;
+	private int dirtyCount;
+	private boolean allDirty;
+
+	// outputs, guarded by computeLock
+	private final Object computeLock = new Object();
+	private final double[] computePrices;
+	private final int[] work;
+	private final double[] volatility;
+	private final double[] delta;
+	private final double[] gamma;
+	private final double[] vega;
+	private final double[] theta;
+	private double computeSpot;
+	private double computeTime;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * @param master          is the instrument master of the index.
+	 * @param expiry          is the expiry of the chain.
+	 * @param underlyingToken is the token whose ticks give the spot, e.g. the
+	 *                        index or the future.
+	 * @param rate            is the risk-free rate, e.g. 0.07.
+	 */
+	public OptionChain(InstrumentMaster master, DerivativesIndex.Expiry expiry, int underlyingToken, double rate) {
+		this.underlyingToken = underlyingToken;
+		this.expiryMillis = expiry.getExpiryDay() * DAY_MILLIS + EXPIRY_TIME_MILLIS;
+		this.rate = rate;
+		int count = 0;
+		for (int i = 0; i < expiry.size(); i++) {
+			count += (expiry.getCall(i) >= 0 ? 1 : 0) + (expiry.getPut(i) >= 0 ? 1 : 0);
+		}
+		size = count;
+		tokens = new int[size];
+		masterIndices = new int[size];
+		calls = new boolean[size];
+		strikes = new double[size];
+		positions = new IntIntHashMap(size, -1);
+		int position = 0;
+		for (int i = 0; i < expiry.size(); i++) {
+			for (int side = 0; side < 2; side++) {
+				int index = side == 0 ? expiry.getCall(i) : expiry.getPut(i);
+				if (index < 0) {
+					continue;
+				}
+				tokens[position] = master.getToken(index);
+				masterIndices[position] = index;
+				calls[position] = side == 0;
+				strikes[position] = expiry.getStrike(i);
+				positions.put(tokens[position], position);
+				position++;
+			}
+		}
+		prices = new double[size];
+		dirty = new boolean[size];
+		dirtyList = new int[size];
+		computePrices = new double[size];
+		work = new int[size];
+		volatility = new double[size];
+		delta = new double[size];
+		gamma = new double[size];
+		vega = new double[size];
+		theta = new double[size];
+		Arrays.fill(prices, Double.NaN);
+		Arrays.fill(volatility, Double.NaN);
+		Arrays.fill(delta, Double.NaN);
+		Arrays.fill(gamma, Double.NaN);
+		Arrays.fill(vega, Double.NaN);
+		Arrays.fill(theta, Double.NaN);
+	}
+
+	/**
+	 * Sets the pool running large recomputes.
+	 * 
+	 * @param pool is the common fork-join pool by default.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void onTick(Tick tick) {
+		if (tick.token == underlyingToken) {
+			setSpot(tick.lastTradedPrice);
+		} else {
+			int position = positions.get(tick.token);
+			if (position >= 0) {
+				setPrice(position, tick.lastTradedPrice);
+			}
+		}
+	}
+
+	/** Sets the price of the underlying, marking every contract. */
+	public synchronized void setSpot(double spot) {
+		if (spot != this.spot) {
+			this.spot = spot;
+			allDirty = true;
+		}
+	}
+
+	/**
+	 * Sets the price of a contract, marking it.
+	 * 
+	 * @param position is the position of the contract.
+	 * @param price    is its last traded or mid price.
+	 */
+	public synchronized void setPrice(int position, double price) {
+		if (price != prices[position]) {
+			prices[position] = price;
+			if (!dirty[position]) {
+				dirty[position] = true;
+				dirtyList[dirtyCount++] = position;
+			}
+		}
+	}
+
+	/** Marks every contract, e.g. for time decay. */
+	public synchronized void invalidate() {
+		allDirty = true;
+	}
+
+	/**
+	 * Solves the marked contracts as of now.
+	 * 
+	 * @return the number of contracts solved.
+	 */
+	public int recompute() {
+		return recompute(System.currentTimeMillis());
+	}
+
+	/**
+	 * Solves the marked contracts.
+	 * 
+	 * @param now is the valuation time in epoch milliseconds.
+	 * @return the number of contracts solved.
+	 */
+	public int recompute(long now) {
+		synchronized (computeLock) {
+			int count;
+			synchronized (this) {
+				if (allDirty) {
+					count = size;
+					for (int i = 0; i < size; i++) {
+						work[i] = i;
+						dirty[i] = false;
+					}
+					allDirty = false;
+				} else {
+					count = dirtyCount;
+					for (int i = 0; i < count; i++) {
+						work[i] = dirtyList[i];
+						dirty[work[i]] = false;
+					}
+				}
+				dirtyCount = 0;
+				for (int i = 0; i < count; i++) {
+					computePrices[work[i]] = prices[work[i]];
+				}
+				computeSpot = spot;
+			}
+			computeTime = (expiryMillis - now) / YEAR_MILLIS;
+			if (count <= BATCH_SIZE) {
+				solve(0, count);
+			} else {
+				pool.invoke(new Batch(0, count));
+			}
+			return count;
+		}
+	}
+
+	private void solve(int from, int to) {
+		double spot = computeSpot;
+		double time = computeTime;
+		for (int w = from; w < to; w++) {
+			int i = work[w];
+			double strike = strikes[i];
+			double sigma = BlackScholes.impliedVolatility(calls[i], computePrices[i], spot, strike, time, rate,
+					volatility[i]);
+			volatility[i] = sigma;
+			if (Double.isNaN(sigma)) {
+				delta[i] = gamma[i] = vega[i] = theta[i] = Double.NaN;
+				continue;
+			}
+			double sqrtTime = Math.sqrt(time);
+			double deviation = sigma * sqrtTime;
+			double d1 = (Math.log(spot / strike) + (rate + sigma * sigma / 2) * time) / deviation;
+			double d2 = d1 - deviation;
+			double density = BlackScholes.pdf(d1);
+			double discounted = strike * Math.exp(-rate * time);
+			double decay = -spot * density * sigma / (2 * sqrtTime);
+			if (calls[i]) {
+				delta[i] = BlackScholes.cdf(d1);
+				theta[i] = (decay - rate * discounted * BlackScholes.cdf(d2)) / 365;
+			} else {
+				delta[i] = BlackScholes.cdf(d1) - 1;
+				theta[i] = (decay + rate * discounted * BlackScholes.cdf(-d2)) / 365;
+			}
+			gamma[i] = density / (spot * deviation);
+			vega[i] = spot * density * sqrtTime / 100;
+		}
+	}
+
+	/** Returns the number of contracts. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the option tokens and the underlying token, to subscribe. */
+	public int[] getTokens() {
+		int[] all = Arrays.copyOf(tokens, size + 1);
+		all[size] = underlyingToken;
+		return all;
+	}
+
+	/**
+	 * Returns the position of a contract.
+	 * 
+	 * @param token is the option token.
+	 * @return the position, or -1 if absent.
+	 */
+	public int indexOf(int token) {
+		return positions.get(token);
+	}
+
+	public int getToken(int position) {
+		return tokens[position];
+	}
+
+	/** Returns the index of the contract in the instrument master. */
+	public int getMasterIndex(int position) {
+		return masterIndices[position];
+	}
+
+	public boolean isCall(int position) {
+		return calls[position];
+	}
+
+	public double getStrike(int position) {
+		return strikes[position];
+	}
+
+	public synchronized double getSpot() {
+		return spot;
+	}
+
+	public synchronized double getPrice(int position) {
+		return prices[position];
+	}
+
+	/** Returns the implied volatility of the last recompute, or NaN. */
+	public double getImpliedVolatility(int position) {
+		synchronized (computeLock) {
+			return volatility[position];
+		}
+	}
+
+	public double getDelta(int position) {
+		synchronized (computeLock) {
+			return delta[position];
+		}
+	}
+
+	public double getGamma(int position) {
+		synchronized (computeLock) {
+			return gamma[position];
+		}
+	}
+
+	public double getVega(int position) {
+		synchronized (computeLock) {
+			return vega[position];
+		}
+	}
+
+	public double getTheta(int position) {
+		synchronized (computeLock) {
+			return theta[position];
+		}
+	}
+
+	/**
+	 * Copies the results of the last recompute for every contract.
+	 * 
+	 * @param volatility receives the implied volatilities, or null.
+	 * @param delta      receives the deltas, or null.
+	 * @param gamma      receives the gammas, or null.
+	 * @param vega       receives the vegas, or null.
+	 * @param theta      receives the thetas, or null.
+	 */
+	public void getGreeks(double[] volatility, double[] delta, double[] gamma, double[] vega, double[] theta) {
+		synchronized (computeLock) {
+			copy(this.volatility, volatility);
+			copy(this.delta, delta);
+			copy(this.gamma, gamma);
+			copy(this.vega, vega);
+			copy(this.theta, theta);
+		}
+	}
+
+	private void copy(double[] source, double[] dst) {
+		if (dst != null) {
+			System.arraycopy(source, 0, dst, 0, size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OptionChain [underlyingToken=" + underlyingToken + ", expiryMillis=" + expiryMillis + ", size=" + size
+				+ "]";
+	}
+
+	/** Solves a range of the work list, splitting it while it's large. */
+	private final class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Batch(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_SIZE) {
+				solve(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Batch(from, middle), new Batch(middle, to));
+			}
+		}
+	}
+}
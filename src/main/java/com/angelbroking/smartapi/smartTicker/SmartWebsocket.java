@@ -1,32 +1,19 @@
 package com.angelbroking.smartapi.smartTicker;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.zip.DataFormatException;
-import java.util.zip.InflaterOutputStream;
-
-import javax.net.ssl.SSLContext;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.angelbroking.smartapi.Routes;
+import com.angelbroking.smartapi.feed.FeedLatencyStats;
+import com.angelbroking.smartapi.feed.FeedTransport;
+import com.angelbroking.smartapi.feed.NvWebSocketTransport;
+import com.angelbroking.smartapi.feed.OnTick;
+import com.angelbroking.smartapi.feed.TickJournal;
+import com.angelbroking.smartapi.feed.TickerCore;
 import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
-import com.angelbroking.smartapi.utils.NaiveSSLContext;
-import com.neovisionaries.ws.client.WebSocket;
 import com.neovisionaries.ws.client.WebSocketAdapter;
-import com.neovisionaries.ws.client.WebSocketException;
-import com.neovisionaries.ws.client.WebSocketFactory;
-import com.neovisionaries.ws.client.WebSocketFrame;
 
 public class SmartWebsocket {
 
@@ -36,17 +23,26 @@ public class SmartWebsocket {
 	private SmartWSOnConnect onConnectedListener;
 	private SmartWSOnDisconnect onDisconnectedListener;
 	private SmartWSOnError onErrorListener;
-	private WebSocket ws;
 	private String clientId;
 	private String jwtToken;
 	private String apiKey;
 	private String actionType;
 	private String feedType;
+	private final TickerCore core;
 
 	/**
 	 * Initialize SmartAPITicker.
 	 */
 	public SmartWebsocket(String clientId, String jwtToken, String apiKey, String actionType, String feedType) {
+		this(clientId, jwtToken, apiKey, actionType, feedType, new NvWebSocketTransport());
+	}
+
+	/**
+	 * Initialize SmartWebsocket on the given transport, e.g. an
+	 * OkHttpWebSocketTransport sharing the REST client.
+	 */
+	public SmartWebsocket(String clientId, String jwtToken, String apiKey, String actionType, String feedType,
+			FeedTransport transport) {
 
 		this.clientId = clientId;
 		this.jwtToken = jwtToken;
@@ -54,23 +50,41 @@ public class SmartWebsocket {
 		this.actionType = actionType;
 		this.feedType = feedType;
 
-		try {
-			String swsuri = wsuri + "?jwttoken=" + this.jwtToken + "&&clientcode=" + this.clientId + "&&apikey="
-					+ this.apiKey;
-			SSLContext context = NaiveSSLContext.getInstance("TLS");
-			ws = new WebSocketFactory().setSSLContext(context).setVerifyHostname(false).createSocket(swsuri);
+		String swsuri = wsuri + "?jwttoken=" + this.jwtToken + "&&clientcode=" + this.clientId + "&&apikey="
+				+ this.apiKey;
+		this.core = new TickerCore(transport, swsuri, new TickerCore.Listener() {
 
-		} catch (IOException e) {
-			if (onErrorListener != null) {
-				onErrorListener.onError(e);
+			@Override
+			public void onConnected() {
+				if (onConnectedListener != null) {
+					onConnectedListener.onConnected();
+				}
+			}
+
+			@Override
+			public void onDisconnected() {
+				if (onDisconnectedListener != null) {
+					onDisconnectedListener.onDisconnected();
+				}
 			}
-			return;
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		}
 
-		ws.addListener(getWebsocketAdapter());
+			@Override
+			public void onTicks(JSONArray ticks) {
+				if (onTickerArrivalListener != null) {
+					onTickerArrivalListener.onTicks(ticks);
+				}
+			}
 
+			@Override
+			public void onError(Exception exception) {
+				if (onErrorListener != null) {
+					onErrorListener.onError(exception);
+				} else {
+					exception.printStackTrace();
+				}
+			}
+		});
+		this.core.setHeartbeat(request().toString(), 60000);
 	}
 
 	/**
@@ -92,6 +106,35 @@ public class SmartWebsocket {
 		this.onTickerArrivalListener = onTickerArrivalListener;
 	}
 
+	/**
+	 * Set listener for typed ticks decoded from binary frames. The tick instance
+	 * is reused for every packet.
+	 * 
+	 * @param onTickListener is listener which listens for each decoded tick.
+	 */
+	public void setOnTickListener(OnTick onTickListener) {
+		core.setOnTickListener(onTickListener);
+	}
+
+	/**
+	 * Set journal recording every decoded frame. Frames are written by the
+	 * journal's own thread.
+	 * 
+	 * @param tickJournal is the journal, or null to stop recording.
+	 */
+	public void setTickJournal(TickJournal tickJournal) {
+		core.setTickJournal(tickJournal);
+	}
+
+	/**
+	 * Set stats timing every frame through decoding and the listeners.
+	 * 
+	 * @param latencyStats receives the timings, or null to stop timing.
+	 */
+	public void setLatencyStats(FeedLatencyStats latencyStats) {
+		core.setLatencyStats(latencyStats);
+	}
+
 	/**
 	 * Set listener for on connection established.
 	 * 
@@ -110,94 +153,34 @@ public class SmartWebsocket {
 		onDisconnectedListener = listener;
 	}
 
-	/** Returns a WebSocketAdapter to listen to ticker related events. */
+	/**
+	 * Returns a WebSocketAdapter feeding this websocket, for callers attaching it
+	 * to their own nv-websocket-client socket.
+	 * 
+	 * @deprecated the connection is managed by the websocket's transport.
+	 */
+	@Deprecated
 	public WebSocketAdapter getWebsocketAdapter() {
-		return new WebSocketAdapter() {
-
-			@Override
-			public void onConnected(WebSocket websocket, Map<String, List<String>> headers) throws WebSocketException {
-				onConnectedListener.onConnected();
-				Runnable runnable = new Runnable() {
-					public void run() {
-						JSONObject wsMWJSONRequest = new JSONObject();
-						wsMWJSONRequest.put("actiontype", actionType);
-						wsMWJSONRequest.put("feedtype", feedType);
-						wsMWJSONRequest.put("jwttoken", jwtToken);
-						wsMWJSONRequest.put("clientcode", clientId);
-						wsMWJSONRequest.put("apikey", apiKey);
-						ws.sendText(wsMWJSONRequest.toString());
-					}
-				};
-
-				ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-				service.scheduleAtFixedRate(runnable, 0, 1, TimeUnit.MINUTES);
-
-			}
-
-			@Override
-			public void onTextMessage(WebSocket websocket, String message) throws IOException, DataFormatException {
-				byte[] decoded = Base64.getDecoder().decode(message);
-				byte[] result = decompress(decoded);
-				String str = new String(result, StandardCharsets.UTF_8);
-
-				JSONArray tickerData = new JSONArray(str);
-
-				if (onTickerArrivalListener != null) {
-					onTickerArrivalListener.onTicks(tickerData);
-				}
-			}
-
-			@Override
-			public void onBinaryMessage(WebSocket websocket, byte[] binary) {
-				try {
-					super.onBinaryMessage(websocket, binary);
-				} catch (Exception e) {
-					e.printStackTrace();
-					if (onErrorListener != null) {
-						onErrorListener.onError(e);
-					}
-				}
-			}
-
-			/**
-			 * On disconnection, return statement ensures that the thread ends.
-			 *
-			 * @param websocket
-			 * @param serverCloseFrame
-			 * @param clientCloseFrame
-			 * @param closedByServer
-			 * @throws Exception
-			 */
-			@Override
-			public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
-					WebSocketFrame clientCloseFrame, boolean closedByServer) {
-				if (onDisconnectedListener != null) {
-					onDisconnectedListener.onDisconnected();
-				}
-				return;
-			}
-
-			@Override
-			public void onError(WebSocket websocket, WebSocketException cause) {
-				try {
-					super.onError(websocket, cause);
-				} catch (Exception e) {
-					e.printStackTrace();
-					if (onErrorListener != null) {
-						onErrorListener.onError(e);
-					}
-				}
-			}
+		return NvWebSocketTransport.adapter(core.newTransportListener());
+	}
 
-		};
+	/**
+	 * Returns the core managing the connection and decoding of this websocket.
+	 * 
+	 * @return TickerCore
+	 */
+	public TickerCore getTickerCore() {
+		return core;
 	}
 
 	/** Disconnects websocket connection. */
 	public void disconnect() {
+		core.disconnect();
+	}
 
-		if (ws != null && ws.isOpen()) {
-			ws.disconnect();
-		}
+	/** Drops the connection and connects again. */
+	public void reconnect() {
+		core.reconnect();
 	}
 
 	/**
@@ -206,12 +189,7 @@ public class SmartWebsocket {
 	 * @return boolean
 	 */
 	public boolean isConnectionOpen() {
-		if (ws != null) {
-			if (ws.isOpen()) {
-				return true;
-			}
-		}
-		return false;
+		return core.isOpen();
 	}
 
 	/**
@@ -219,46 +197,31 @@ public class SmartWebsocket {
 	 */
 	public void runscript() {
 
-		if (ws != null) {
-			if (ws.isOpen()) {
-
-				JSONObject wsMWJSONRequest = new JSONObject();
-				wsMWJSONRequest.put("actiontype", this.actionType);
-				wsMWJSONRequest.put("feedtype", this.feedType);
-				wsMWJSONRequest.put("jwttoken", this.jwtToken);
-				wsMWJSONRequest.put("clientcode", this.clientId);
-				wsMWJSONRequest.put("apikey", this.apiKey);
-
-				ws.sendText(wsMWJSONRequest.toString());
-
-			} else {
-				if (onErrorListener != null) {
-					onErrorListener.onError(new SmartAPIException("ticker is not connected", "504"));
-				}
-			}
+		if (core.isOpen()) {
+			core.sendText(request().toString());
 		} else {
 			if (onErrorListener != null) {
-				onErrorListener.onError(new SmartAPIException("ticker is null not connected", "504"));
+				onErrorListener.onError(new SmartAPIException("ticker is not connected", "504"));
 			}
 		}
 	}
 
-	public static byte[] decompress(byte[] compressedTxt) throws IOException {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
-		try (OutputStream ios = new InflaterOutputStream(os)) {
-			ios.write(compressedTxt);
-		}
+	private JSONObject request() {
+		JSONObject wsMWJSONRequest = new JSONObject();
+		wsMWJSONRequest.put("actiontype", this.actionType);
+		wsMWJSONRequest.put("feedtype", this.feedType);
+		wsMWJSONRequest.put("jwttoken", this.jwtToken);
+		wsMWJSONRequest.put("clientcode", this.clientId);
+		wsMWJSONRequest.put("apikey", this.apiKey);
+		return wsMWJSONRequest;
+	}
 
-		return os.toByteArray();
+	public static byte[] decompress(byte[] compressedTxt) throws IOException {
+		return TickerCore.decompress(compressedTxt);
 	}
 
 	public void connect() {
-		try {
-			ws.connect();
-		} catch (WebSocketException e) {
-			e.printStackTrace();
-		}
-
+		core.connect();
 	}
 
 }
@@ -0,0 +1,179 @@
+package com.angelbroking.smartapi.ticker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+
+/**
+ * Spreads the subscriptions of a large instrument universe over several
+ * SmartAPITicker connections.
+ * 
+ * Every scrip is always assigned to the same shard, so its ticks are decoded
+ * on that shard's reader thread and reach the listener in order. Ticks of
+ * different shards are delivered concurrently unless serialized delivery is
+ * enabled, in which case the listener need not be thread safe because ticks of
+ * all shards pass through one lock.
+ */
+public class ShardedTicker {
+
+	private final SmartAPITicker[] shards;
+	private final Object deliveryLock = new Object();
+	private volatile OnTicks onTickerArrivalListener;
+	private volatile boolean serializedDelivery;
+
+	/**
+	 * Initialize ShardedTicker.
+	 * 
+	 * @param clientId   is the client code.
+	 * @param feedToken  is the feed token received on login.
+	 * @param shardCount is the number of connections to open.
+	 */
+	public ShardedTicker(String clientId, String feedToken, int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("shardCount must be positive");
+		}
+		shards = new SmartAPITicker[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			final SmartAPITicker shard = new SmartAPITicker(clientId, feedToken, "", "mw");
+			shard.setOnConnectedListener(new OnConnect() {
+				@Override
+				public void onConnected() {
+					shard.subscribe();
+				}
+			});
+			shard.setOnTickerArrivalListener(new OnTicks() {
+				@Override
+				public void onTicks(JSONArray ticks) {
+					deliver(ticks);
+				}
+			});
+			shards[i] = shard;
+		}
+	}
+
+	/**
+	 * Set listener for listening to ticks of all shards.
+	 * 
+	 * @param onTickerArrivalListener is listener which listens for each tick.
+	 */
+	public void setOnTickerArrivalListener(OnTicks onTickerArrivalListener) {
+		this.onTickerArrivalListener = onTickerArrivalListener;
+	}
+
+	/**
+	 * Delivers the ticks of all shards one batch at a time when enabled.
+	 * 
+	 * @param serializedDelivery true to deliver from one shard at a time.
+	 */
+	public void setSerializedDelivery(boolean serializedDelivery) {
+		this.serializedDelivery = serializedDelivery;
+	}
+
+	/**
+	 * Subscribes scrips, each on the shard it hashes to.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are scrips such as "nse_cm|2885".
+	 */
+	public void subscribe(String task, List<String> scrips) {
+		List<List<String>> perShard = partition(scrips);
+		for (int i = 0; i < shards.length; i++) {
+			if (!perShard.get(i).isEmpty()) {
+				shards[i].subscribe(task, perShard.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Unsubscribes scrips from the shards holding them.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are scrips such as "nse_cm|2885".
+	 */
+	public void unsubscribe(String task, List<String> scrips) {
+		List<List<String>> perShard = partition(scrips);
+		for (int i = 0; i < shards.length; i++) {
+			if (!perShard.get(i).isEmpty()) {
+				shards[i].unsubscribe(task, perShard.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the shard a scrip is assigned to.
+	 * 
+	 * @param scrip is a scrip such as "nse_cm|2885".
+	 * @return shard index.
+	 */
+	public int shardOf(String scrip) {
+		return (scrip.hashCode() & Integer.MAX_VALUE) % shards.length;
+	}
+
+	/**
+	 * Returns the ticker of a shard.
+	 * 
+	 * @param index is the shard index.
+	 * @return SmartAPITicker
+	 */
+	public SmartAPITicker getShard(int index) {
+		return shards[index];
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/** Connects all shards. */
+	public void connect() {
+		for (SmartAPITicker shard : shards) {
+			shard.connect();
+		}
+	}
+
+	/** Disconnects all shards. */
+	public void disconnect() {
+		for (SmartAPITicker shard : shards) {
+			shard.disconnect();
+		}
+	}
+
+	/**
+	 * Returns true if the connections of all shards are open.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isConnectionOpen() {
+		for (SmartAPITicker shard : shards) {
+			if (!shard.isConnectionOpen()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<List<String>> partition(List<String> scrips) {
+		List<List<String>> perShard = new ArrayList<List<String>>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			perShard.add(new ArrayList<String>());
+		}
+		for (String scrip : scrips) {
+			perShard.get(shardOf(scrip)).add(scrip);
+		}
+		return perShard;
+	}
+
+	private void deliver(JSONArray ticks) {
+		OnTicks listener = onTickerArrivalListener;
+		if (listener == null) {
+			return;
+		}
+		if (serializedDelivery) {
+			synchronized (deliveryLock) {
+				listener.onTicks(ticks);
+			}
+		} else {
+			listener.onTicks(ticks);
+		}
+	}
+}
@@ -1,73 +1,88 @@
 package com.angelbroking.smartapi.ticker;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.zip.DataFormatException;
-import java.util.zip.InflaterOutputStream;
-
-import javax.net.ssl.SSLContext;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.angelbroking.smartapi.Routes;
+import com.angelbroking.smartapi.feed.FeedLatencyStats;
+import com.angelbroking.smartapi.feed.FeedTransport;
+import com.angelbroking.smartapi.feed.NvWebSocketTransport;
+import com.angelbroking.smartapi.feed.OnTick;
+import com.angelbroking.smartapi.feed.TickJournal;
+import com.angelbroking.smartapi.feed.TickerCore;
 import com.angelbroking.smartapi.http.exceptions.SmartAPIException;
-import com.angelbroking.smartapi.utils.NaiveSSLContext;
-import com.neovisionaries.ws.client.WebSocket;
 import com.neovisionaries.ws.client.WebSocketAdapter;
-import com.neovisionaries.ws.client.WebSocketException;
-import com.neovisionaries.ws.client.WebSocketFactory;
-import com.neovisionaries.ws.client.WebSocketFrame;
 
 public class SmartAPITicker {
 
 	private Routes routes = new Routes();
-	private final String wsuri = routes.getWsuri();;
+	private final String wsuri = routes.getWsuri();
 	private OnTicks onTickerArrivalListener;
 	private OnConnect onConnectedListener;
 	private OnError onErrorListener;
-	private WebSocket ws;
 	private String clientId;
 	private String feedToken;
-	private String script;
-	private String task;
-	private SSLContext context;
+	private final SubscriptionManager subscriptions;
+	private final TickerCore core;
 
 	/**
 	 * Initialize SmartAPITicker.
 	 */
 	public SmartAPITicker(String clientId, String feedToken, String script, String task) {
+		this(clientId, feedToken, script, task, new NvWebSocketTransport());
+	}
+
+	/**
+	 * Initialize SmartAPITicker on the given transport, e.g. an
+	 * OkHttpWebSocketTransport sharing the REST client.
+	 */
+	public SmartAPITicker(String clientId, String feedToken, String script, String task, FeedTransport transport) {
 
 		this.clientId = clientId;
 		this.feedToken = feedToken;
-		this.script = script;
-		this.task = task;
+		this.subscriptions = new SubscriptionManager(new SubscriptionManager.FrameSender() {
+			@Override
+			public boolean send(String task, String channel) {
+				return sendTask(task, channel);
+			}
+		});
+		this.subscriptions.add(task, SubscriptionManager.parseChannel(script));
 
-		try {
+		this.core = new TickerCore(transport, wsuri, new TickerCore.Listener() {
 
-			context = NaiveSSLContext.getInstance("TLS");
-			ws = new WebSocketFactory().setSSLContext(context).setVerifyHostname(false).createSocket(wsuri);
+			@Override
+			public void onConnected() {
+				core.sendText(request("cn", "").toString());
+				if (onConnectedListener != null) {
+					onConnectedListener.onConnected();
+				}
+			}
 
-		} catch (IOException e) {
-			if (onErrorListener != null) {
-				onErrorListener.onError(e);
+			@Override
+			public void onDisconnected() {
 			}
-			return;
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		}
 
-		ws.addListener(getWebsocketAdapter());
+			@Override
+			public void onTicks(JSONArray ticks) {
+				if (onTickerArrivalListener != null) {
+					onTickerArrivalListener.onTicks(ticks);
+				}
+			}
 
+			@Override
+			public void onError(Exception exception) {
+				if (onErrorListener != null) {
+					onErrorListener.onError(exception);
+				} else {
+					exception.printStackTrace();
+				}
+			}
+		});
+		this.core.setHeartbeat(request("hb", "").toString(), 60000);
+		this.core.setAutoReconnect(true);
 	}
 
 //	/**
@@ -89,6 +104,35 @@ public class SmartAPITicker {
 		this.onTickerArrivalListener = onTickerArrivalListener;
 	}
 
+	/**
+	 * Set listener for typed ticks decoded from binary frames. The tick instance
+	 * is reused for every packet.
+	 * 
+	 * @param onTickListener is listener which listens for each decoded tick.
+	 */
+	public void setOnTickListener(OnTick onTickListener) {
+		core.setOnTickListener(onTickListener);
+	}
+
+	/**
+	 * Set journal recording every decoded frame. Frames are written by the
+	 * journal's own thread.
+	 * 
+	 * @param tickJournal is the journal, or null to stop recording.
+	 */
+	public void setTickJournal(TickJournal tickJournal) {
+		core.setTickJournal(tickJournal);
+	}
+
+	/**
+	 * Set stats timing every frame through decoding and the listeners.
+	 * 
+	 * @param latencyStats receives the timings, or null to stop timing.
+	 */
+	public void setLatencyStats(FeedLatencyStats latencyStats) {
+		core.setLatencyStats(latencyStats);
+	}
+
 	/**
 	 * Set listener for on connection established.
 	 * 
@@ -107,99 +151,37 @@ public class SmartAPITicker {
 //		onDisconnectedListener = listener;
 //	}
 
-	/** Returns a WebSocketAdapter to listen to ticker related events. */
+	/**
+	 * Returns a WebSocketAdapter feeding this ticker, for callers attaching it to
+	 * their own nv-websocket-client socket.
+	 * 
+	 * @deprecated the connection is managed by the ticker's transport.
+	 */
+	@Deprecated
 	public WebSocketAdapter getWebsocketAdapter() {
-		return new WebSocketAdapter() {
-
-			@Override
-			public void onConnected(WebSocket websocket, Map<String, List<String>> headers) throws WebSocketException {
-				// Send a text frame.
-				JSONObject wsCNJSONRequest = new JSONObject();
-				wsCNJSONRequest.put("task", "cn");
-				wsCNJSONRequest.put("channel", "");
-				wsCNJSONRequest.put("token", feedToken);
-				wsCNJSONRequest.put("user", clientId);
-				wsCNJSONRequest.put("acctid", clientId);
-				ws.sendText(wsCNJSONRequest.toString());
-				onConnectedListener.onConnected();
-
-				Runnable runnable = new Runnable() {
-					public void run() {
-						JSONObject wsMWJSONRequest = new JSONObject();
-						wsMWJSONRequest.put("task", "hb");
-						wsMWJSONRequest.put("channel", "");
-						wsMWJSONRequest.put("token", feedToken);
-						wsMWJSONRequest.put("user", clientId);
-						wsMWJSONRequest.put("acctid", clientId);
-						ws.sendText(wsMWJSONRequest.toString());
-					}
-				};
-
-				ScheduledExecutorService service = Executors
-
-						.newSingleThreadScheduledExecutor();
-
-				service.scheduleAtFixedRate(runnable, 0, 1, TimeUnit.MINUTES);
-
-			}
-
-			@Override
-			public void onTextMessage(WebSocket websocket, String message) throws IOException, DataFormatException {
-				byte[] decoded = Base64.getDecoder().decode(message);
-				byte[] result = decompress(decoded);
-				String str = new String(result, StandardCharsets.UTF_8);
-
-				JSONArray tickerData = new JSONArray(str);
-
-				if (onTickerArrivalListener != null) {
-					onTickerArrivalListener.onTicks(tickerData);
-				}
-			}
-
-			@Override
-			public void onBinaryMessage(WebSocket websocket, byte[] binary) {
-				try {
-					super.onBinaryMessage(websocket, binary);
-				} catch (Exception e) {
-					e.printStackTrace();
-					if (onErrorListener != null) {
-						onErrorListener.onError(e);
-					}
-				}
-			}
-
-			/**
-			 * On disconnection, return statement ensures that the thread ends.
-			 *
-			 * @param websocket
-			 * @param serverCloseFrame
-			 * @param clientCloseFrame
-			 * @param closedByServer
-			 * @throws Exception
-			 */
-			@Override
-			public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
-					WebSocketFrame clientCloseFrame, boolean closedByServer) {
-
-				try {
-					context = NaiveSSLContext.getInstance("TLS");
-					ws = new WebSocketFactory().setSSLContext(context).setVerifyHostname(false).createSocket(wsuri);
-					ws.addListener(getWebsocketAdapter());
-					connect();
+		return NvWebSocketTransport.adapter(core.newTransportListener());
+	}
 
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		};
+	/**
+	 * Returns the core managing the connection and decoding of this ticker.
+	 * 
+	 * @return TickerCore
+	 */
+	public TickerCore getTickerCore() {
+		return core;
 	}
 
 	/** Disconnects websocket connection. */
 	public void disconnect() {
+		core.disconnect();
+	}
 
-		if (ws != null && ws.isOpen()) {
-			ws.disconnect();
-		}
+	/**
+	 * Drops the connection and connects again. Subscriptions are restored by the
+	 * onConnected listener calling subscribe().
+	 */
+	public void reconnect() {
+		core.reconnect();
 	}
 
 	/**
@@ -208,40 +190,17 @@ public class SmartAPITicker {
 	 * @return boolean
 	 */
 	public boolean isConnectionOpen() {
-		if (ws != null) {
-			if (ws.isOpen()) {
-				return true;
-			}
-		}
-		return false;
+		return core.isOpen();
 	}
 
 	/**
-	 * Subscribes script.
+	 * Subscribes script. Sends the complete current subscription state, so
+	 * calling it from the onConnected listener restores every scrip after a
+	 * reconnect.
 	 */
 	public void subscribe() {
-
-		if (ws != null) {
-			if (ws.isOpen()) {
-
-				JSONObject wsMWJSONRequest = new JSONObject();
-				wsMWJSONRequest.put("task", this.task);
-				wsMWJSONRequest.put("channel", this.script);
-				wsMWJSONRequest.put("token", this.feedToken);
-				wsMWJSONRequest.put("user", this.clientId);
-				wsMWJSONRequest.put("acctid", this.clientId);
-
-				ws.sendText(wsMWJSONRequest.toString());
-
-			} else {
-				if (onErrorListener != null) {
-					onErrorListener.onError(new SmartAPIException("ticker is not connected", "504"));
-				}
-			}
-		} else {
-			if (onErrorListener != null) {
-				onErrorListener.onError(new SmartAPIException("ticker is null not connected", "504"));
-			}
+		if (checkConnection()) {
+			subscriptions.replay();
 		}
 	}
 
@@ -249,47 +208,71 @@ public class SmartAPITicker {
 	 * runSript script.
 	 */
 	public void resubscribe() {
+		subscribe();
+	}
 
-		if (ws != null) {
-			if (ws.isOpen()) {
+	/**
+	 * Subscribes scrips for a task in addition to the ones already subscribed.
+	 * Only the scrips not yet subscribed are sent. When the ticker is not
+	 * connected the state is updated and sent on the next subscribe().
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are scrips such as "nse_cm|2885".
+	 */
+	public void subscribe(String task, List<String> scrips) {
+		subscriptions.subscribe(task, scrips);
+	}
 
-				JSONObject wsMWJSONRequest = new JSONObject();
-				wsMWJSONRequest.put("task", this.task);
-				wsMWJSONRequest.put("channel", this.script);
-				wsMWJSONRequest.put("token", this.feedToken);
-				wsMWJSONRequest.put("user", this.clientId);
-				wsMWJSONRequest.put("acctid", this.clientId);
+	/**
+	 * Unsubscribes scrips for a task. Only the scrips currently subscribed are
+	 * sent.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are scrips such as "nse_cm|2885".
+	 */
+	public void unsubscribe(String task, List<String> scrips) {
+		subscriptions.unsubscribe(task, scrips);
+	}
 
-				ws.sendText(wsMWJSONRequest.toString());
+	/**
+	 * Returns the subscription manager holding the scrips of this ticker.
+	 * 
+	 * @return SubscriptionManager
+	 */
+	public SubscriptionManager getSubscriptionManager() {
+		return subscriptions;
+	}
 
-			} else {
-				if (onErrorListener != null) {
-					onErrorListener.onError(new SmartAPIException("ticker is not connected", "504"));
-				}
-			}
-		} else {
+	private boolean checkConnection() {
+		if (!core.isOpen()) {
 			if (onErrorListener != null) {
-				onErrorListener.onError(new SmartAPIException("ticker is null not connected", "504"));
+				onErrorListener.onError(new SmartAPIException("ticker is not connected", "504"));
 			}
+			return false;
 		}
+		return true;
 	}
 
-	public static byte[] decompress(byte[] compressedTxt) throws IOException {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
-		try (OutputStream ios = new InflaterOutputStream(os)) {
-			ios.write(compressedTxt);
-		}
+	private boolean sendTask(String task, String channel) {
+		return core.sendText(request(task, channel).toString());
+	}
 
-		return os.toByteArray();
+	private JSONObject request(String task, String channel) {
+		JSONObject wsMWJSONRequest = new JSONObject();
+		wsMWJSONRequest.put("task", task);
+		wsMWJSONRequest.put("channel", channel);
+		wsMWJSONRequest.put("token", this.feedToken);
+		wsMWJSONRequest.put("user", this.clientId);
+		wsMWJSONRequest.put("acctid", this.clientId);
+		return wsMWJSONRequest;
 	}
 
-	public void connect() {
-		try {
-			ws.connect();
-		} catch (WebSocketException e) {
-			e.printStackTrace();
-		}
+	public static byte[] decompress(byte[] compressedTxt) throws IOException {
+		return TickerCore.decompress(compressedTxt);
+	}
 
+	public void connect() {
+		core.connect();
 	}
 
 }
@@ -0,0 +1,221 @@
+package com.angelbroking.smartapi.ticker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the scrips subscribed on a ticker connection, per task (mode), and
+ * sends only the differences when the set changes.
+ * 
+ * Scrips use the feed's channel notation, for example "nse_cm|2885". Large
+ * lists are split into several frames so that no frame exceeds
+ * {@link #setMaxScripsPerFrame(int)} scrips or
+ * {@link #setMaxChannelLength(int)} characters.
+ */
+public class SubscriptionManager {
+
+	/** Default number of scrips sent in a single subscribe frame. */
+	public static final int DEFAULT_MAX_SCRIPS_PER_FRAME = 50;
+
+	/** Default length of the channel string sent in a single frame. */
+	public static final int DEFAULT_MAX_CHANNEL_LENGTH = 4000;
+
+	/**
+	 * Writes one subscription frame on the connection.
+	 */
+	public interface FrameSender {
+
+		/**
+		 * @param task    is the task to send, e.g. "mw".
+		 * @param channel is the '&' separated list of scrips.
+		 * @return true if the frame was written on an open connection.
+		 */
+		boolean send(String task, String channel);
+	}
+
+	private final Map<String, LinkedHashSet<String>> subscriptions = new LinkedHashMap<String, LinkedHashSet<String>>();
+	private final Map<String, String> unsubscribeTasks = new HashMap<String, String>();
+	private final FrameSender sender;
+	private int maxScripsPerFrame = DEFAULT_MAX_SCRIPS_PER_FRAME;
+	private int maxChannelLength = DEFAULT_MAX_CHANNEL_LENGTH;
+
+	public SubscriptionManager(FrameSender sender) {
+		this.sender = sender;
+	}
+
+	public synchronized void setMaxScripsPerFrame(int maxScripsPerFrame) {
+		if (maxScripsPerFrame < 1) {
+			throw new IllegalArgumentException("maxScripsPerFrame must be positive");
+		}
+		this.maxScripsPerFrame = maxScripsPerFrame;
+	}
+
+	public synchronized void setMaxChannelLength(int maxChannelLength) {
+		if (maxChannelLength < 1) {
+			throw new IllegalArgumentException("maxChannelLength must be positive");
+		}
+		this.maxChannelLength = maxChannelLength;
+	}
+
+	/**
+	 * Sets the task used to unsubscribe scrips of a given task. Defaults to the
+	 * task name prefixed with "u", e.g. "umw" for "mw".
+	 * 
+	 * @param task            is the subscribe task.
+	 * @param unsubscribeTask is the task sent for removals.
+	 */
+	public synchronized void setUnsubscribeTask(String task, String unsubscribeTask) {
+		unsubscribeTasks.put(task, unsubscribeTask);
+	}
+
+	/**
+	 * Adds scrips to the local state without sending anything. Used to seed the
+	 * state before the connection is opened.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are the scrips to add.
+	 */
+	public synchronized void add(String task, Collection<String> scrips) {
+		added(task, scrips);
+	}
+
+	/**
+	 * Subscribes scrips, sending only the ones not already subscribed for the
+	 * task.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are the scrips to subscribe.
+	 * @return number of scrips newly subscribed.
+	 */
+	public synchronized int subscribe(String task, Collection<String> scrips) {
+		List<String> diff = added(task, scrips);
+		sendBatches(task, diff);
+		return diff.size();
+	}
+
+	/**
+	 * Unsubscribes scrips, sending only the ones currently subscribed for the
+	 * task.
+	 * 
+	 * @param task   is the task, e.g. "mw".
+	 * @param scrips are the scrips to unsubscribe.
+	 * @return number of scrips removed.
+	 */
+	public synchronized int unsubscribe(String task, Collection<String> scrips) {
+		LinkedHashSet<String> current = subscriptions.get(task);
+		List<String> diff = new ArrayList<String>();
+		if (current == null) {
+			return 0;
+		}
+		for (String scrip : scrips) {
+			if (current.remove(scrip)) {
+				diff.add(scrip);
+			}
+		}
+		if (current.isEmpty()) {
+			subscriptions.remove(task);
+		}
+		sendBatches(unsubscribeTask(task), diff);
+		return diff.size();
+	}
+
+	/**
+	 * Sends the complete current state, e.g. after the connection has been
+	 * (re)established.
+	 */
+	public synchronized void replay() {
+		for (Map.Entry<String, LinkedHashSet<String>> entry : subscriptions.entrySet()) {
+			sendBatches(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the scrips currently subscribed for a task.
+	 * 
+	 * @param task is the task, e.g. "mw".
+	 * @return unmodifiable copy of the subscribed scrips.
+	 */
+	public synchronized Set<String> getSubscriptions(String task) {
+		LinkedHashSet<String> current = subscriptions.get(task);
+		if (current == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(current));
+	}
+
+	/** Returns the tasks which have at least one subscribed scrip. */
+	public synchronized Set<String> getTasks() {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(subscriptions.keySet()));
+	}
+
+	private List<String> added(String task, Collection<String> scrips) {
+		LinkedHashSet<String> current = subscriptions.get(task);
+		if (current == null) {
+			current = new LinkedHashSet<String>();
+			subscriptions.put(task, current);
+		}
+		List<String> diff = new ArrayList<String>();
+		for (String scrip : scrips) {
+			if (scrip != null && !scrip.isEmpty() && current.add(scrip)) {
+				diff.add(scrip);
+			}
+		}
+		if (current.isEmpty()) {
+			subscriptions.remove(task);
+		}
+		return diff;
+	}
+
+	private String unsubscribeTask(String task) {
+		String unsubscribeTask = unsubscribeTasks.get(task);
+		return unsubscribeTask != null ? unsubscribeTask : "u" + task;
+	}
+
+	private void sendBatches(String task, Collection<String> scrips) {
+		StringBuilder channel = new StringBuilder();
+		int count = 0;
+		for (String scrip : scrips) {
+			int length = channel.length() == 0 ? scrip.length() : channel.length() + 1 + scrip.length();
+			if (count > 0 && (count == maxScripsPerFrame || length > maxChannelLength)) {
+				sender.send(task, channel.toString());
+				channel.setLength(0);
+				count = 0;
+			}
+			if (channel.length() > 0) {
+				channel.append('&');
+			}
+			channel.append(scrip);
+			count++;
+		}
+		if (count > 0) {
+			sender.send(task, channel.toString());
+		}
+	}
+
+	/**
+	 * Splits a channel string such as "nse_cm|2885&nse_cm|1594" into scrips.
+	 * 
+	 * @param channel is the '&' separated list of scrips.
+	 * @return list of scrips.
+	 */
+	public static List<String> parseChannel(String channel) {
+		List<String> scrips = new ArrayList<String>();
+		if (channel == null) {
+			return scrips;
+		}
+		for (String scrip : channel.split("&")) {
+			scrip = scrip.trim();
+			if (!scrip.isEmpty()) {
+				scrips.add(scrip);
+			}
+		}
+		return scrips;
+	}
+}
@@ -0,0 +1,166 @@
+package com.angelbroking.smartapi.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to int values without boxing.
+ * 
+ * Used to map instrument tokens to array slots. Not thread safe.
+ */
+public class IntIntHashMap {
+
+	private static final int FREE = 0;
+
+	private final int missingValue;
+	private int[] keys;
+	private int[] values;
+	private boolean hasZeroKey;
+	private int zeroValue;
+	private int size;
+	private int mask;
+
+	/**
+	 * @param expectedSize is the number of entries expected.
+	 * @param missingValue is returned by {@link #get(int)} for absent keys.
+	 */
+	public IntIntHashMap(int expectedSize, int missingValue) {
+		this.missingValue = missingValue;
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	public IntIntHashMap(IntIntHashMap other) {
+		this.missingValue = other.missingValue;
+		this.keys = other.keys.clone();
+		this.values = other.values.clone();
+		this.hasZeroKey = other.hasZeroKey;
+		this.zeroValue = other.zeroValue;
+		this.size = other.size;
+		this.mask = other.mask;
+	}
+
+	public int get(int key) {
+		if (key == FREE) {
+			return hasZeroKey ? zeroValue : missingValue;
+		}
+		int index = mix(key) & mask;
+		while (true) {
+			int candidate = keys[index];
+			if (candidate == key) {
+				return values[index];
+			}
+			if (candidate == FREE) {
+				return missingValue;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	public boolean containsKey(int key) {
+		if (key == FREE) {
+			return hasZeroKey;
+		}
+		int index = mix(key) & mask;
+		while (true) {
+			int candidate = keys[index];
+			if (candidate == key) {
+				return true;
+			}
+			if (candidate == FREE) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the previous value, or the missing value.
+	 */
+	public int put(int key, int value) {
+		if (key == FREE) {
+			int previous = hasZeroKey ? zeroValue : missingValue;
+			if (!hasZeroKey) {
+				size++;
+			}
+			hasZeroKey = true;
+			zeroValue = value;
+			return previous;
+		}
+		int index = mix(key) & mask;
+		while (true) {
+			int candidate = keys[index];
+			if (candidate == key) {
+				int previous = values[index];
+				values[index] = value;
+				return previous;
+			}
+			if (candidate == FREE) {
+				keys[index] = key;
+				values[index] = value;
+				if (++size * 2 > keys.length) {
+					rehash(keys.length << 1);
+				}
+				return missingValue;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getMissingValue() {
+		return missingValue;
+	}
+
+	/** Returns the keys in no particular order. */
+	public int[] keys() {
+		int[] result = new int[size];
+		int count = 0;
+		if (hasZeroKey) {
+			result[count++] = FREE;
+		}
+		for (int key : keys) {
+			if (key != FREE) {
+				result[count++] = key;
+			}
+		}
+		return result;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key != FREE) {
+				int index = mix(key) & mask;
+				while (keys[index] != FREE) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = key;
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,56 @@
+package com.angelbroking.smartapi.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces calls evenly to stay within a request rate limit, e.g. of the
+ * historical data API. Shared by every thread making such calls.
+ */
+public class RateLimiter {
+
+	private final long intervalNanos;
+	private long next;
+
+	/**
+	 * @param permitsPerSecond is the largest number of calls per second.
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("permitsPerSecond must be positive");
+		}
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		this.next = System.nanoTime();
+	}
+
+	/**
+	 * Blocks until the caller may make a call.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void acquire() throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long slot = Math.max(now, next);
+			next = slot + intervalNanos;
+			wait = slot - now;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Takes a permit if one is free now.
+	 * 
+	 * @return false if the caller would have to wait.
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = System.nanoTime();
+		if (next - now > 0) {
+			return false;
+		}
+		next = now + intervalNanos;
+		return true;
+	}
+}